@@ -0,0 +1,318 @@
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes MyAgents for games of one board size that all share one set of resources: a
+ * TranspositionTable, and the opening book, solved-position store, evaluation weights, metrics
+ * and decision listener it is given. Every one of these is safe to use from many agents at
+ * once, so a server can make a fresh agent for each game and player, thousands of them, while
+ * the memory-hungry parts exist once.
+ *
+ * An agent made here allocates only its bitboard, its search's small per-ply buffers and a
+ * ThreatAnalyzer, a few kilobytes. The shared table is allocated when the first agent is made,
+ * not when the factory is, and each agent's endgame solver only when its game reaches the
+ * endgame. setMonteCarlo() and setSearchThreads() are left to each agent, since both allocate
+ * per agent.
+ *
+ * Agents made here do not age the shared table with each search, as an agent with a table of
+ * its own does: with many games under way at once, every move would make the entries the other
+ * games are still using look stale. The factory starts a new generation itself instead, at
+ * most once every setGenerationMillis(), on the first move of any of its agents after that
+ * time has passed, much as BatchMover starts one per batch. Owners that move their games in
+ * batches can turn the timer off and call newGeneration() once per batch instead.
+ *
+ * shared() hands out one factory per board size for the whole JVM, as OpeningBook.open() does
+ * for books. Settings apply to agents made afterwards and may be changed from any thread.
+ */
+public class AgentFactory
+{
+    public static final long DEFAULT_TABLE_BYTES = 64L * 1024 * 1024; // one table for every game, so it may be large
+    public static final long DEFAULT_GENERATION_MILLIS = MyAgent.DEFAULT_MOVE_TIME_MILLIS; // about one generation per move, as for a lone agent
+
+    private static final HashMap<String, AgentFactory> SHARED = new HashMap<String, AgentFactory>(); // guarded by AgentFactory.class
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final long tableBytes;
+    private volatile TranspositionTable table; // made by the first create()
+    private final AtomicLong nextGenerationNanos = new AtomicLong(); // when the next move starts a new generation
+    private volatile long generationMillis = DEFAULT_GENERATION_MILLIS;
+
+    private volatile MoveStrategy strategy = MoveStrategy.DEFAULT;
+    private volatile int searchDepth = MyAgent.DEFAULT_SEARCH_DEPTH;
+    private volatile long moveTimeMillis = MyAgent.DEFAULT_MOVE_TIME_MILLIS;
+    private volatile int endgameEmptySlots = MyAgent.DEFAULT_ENDGAME_EMPTY_SLOTS;
+    private volatile long endgameCacheBytes = EndgameSolver.DEFAULT_CACHE_BYTES;
+    private volatile EvaluationWeights evaluationWeights = EvaluationWeights.DEFAULT;
+    private volatile OpeningBook openingBook; // null for none
+    private volatile SolvedPositionStore solvedPositions; // null for none
+    private volatile AgentMetrics metrics; // null for none
+    private volatile DecisionListener decisionListener = DecisionListener.NONE;
+
+    /**
+     * Constructs a factory with a transposition table of its own.
+     *
+     * @param columnCount the number of columns of every game
+     * @param rowCount the number of rows of every game
+     * @param connectLength the number of tokens in a row that wins
+     * @param tableBytes the memory the shared transposition table may use
+     */
+    public AgentFactory(int columnCount, int rowCount, int connectLength, long tableBytes)
+    {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        this.tableBytes = tableBytes;
+        this.nextGenerationNanos.set(System.nanoTime() + DEFAULT_GENERATION_MILLIS * 1000000L);
+    }
+
+    /**
+     * Returns the JVM's factory for a board size, making it the first time it is asked for,
+     * with a table of DEFAULT_TABLE_BYTES.
+     *
+     * @param columnCount the number of columns of every game
+     * @param rowCount the number of rows of every game
+     * @param connectLength the number of tokens in a row that wins
+     * @return the factory
+     */
+    public static synchronized AgentFactory shared(int columnCount, int rowCount, int connectLength)
+    {
+        String key = columnCount + "x" + rowCount + "x" + connectLength;
+        AgentFactory factory = SHARED.get(key);
+        if (factory == null)
+        {
+            factory = new AgentFactory(columnCount, rowCount, connectLength, DEFAULT_TABLE_BYTES);
+            SHARED.put(key, factory);
+        }
+        return factory;
+    }
+
+    /**
+     * Makes an agent for a game with the factory's strategy.
+     *
+     * @param game the game the agent will be playing, of the factory's board size
+     * @param iAmRed true if the agent is Red, false if it is Yellow
+     * @return the agent
+     * @throws IllegalArgumentException if the game's board is of another size
+     */
+    public MyAgent create(Connect4Game game, boolean iAmRed)
+    {
+        return create(game, iAmRed, strategy);
+    }
+
+    /**
+     * Makes an agent for a game with a strategy of its own, so that games made by one factory
+     * can be played in different ways.
+     *
+     * @param game the game the agent will be playing, of the factory's board size
+     * @param iAmRed true if the agent is Red, false if it is Yellow
+     * @param strategy how the agent chooses its moves
+     * @return the agent
+     * @throws IllegalArgumentException if the game's board is of another size
+     */
+    public MyAgent create(Connect4Game game, boolean iAmRed, MoveStrategy strategy)
+    {
+        if (game.getColumnCount() != columnCount || game.getColumn(0).getRowCount() != rowCount)
+        {
+            throw new IllegalArgumentException("The factory makes agents for a " + columnCount + "x" + rowCount + " board");
+        }
+        MyAgent agent = new MyAgent(game, iAmRed, getTable(), connectLength);
+        agent.factory = this;
+        if (agent.search != null)
+        {
+            agent.search.setAgesTable(false); // the factory starts generations for every game at once
+        }
+        else
+        {
+            agent.generalSearch.setAgesTable(false);
+        }
+        agent.setStrategy(strategy);
+        agent.setSearchDepth(searchDepth);
+        agent.setMoveTimeMillis(moveTimeMillis);
+        agent.setEndgameEmptySlots(endgameEmptySlots);
+        agent.setEndgameCacheBytes(endgameCacheBytes);
+        agent.setEvaluationWeights(evaluationWeights);
+        agent.setMetrics(metrics);
+        agent.setDecisionListener(decisionListener);
+        if (openingBook != null)
+        {
+            agent.setOpeningBook(openingBook);
+        }
+        if (solvedPositions != null)
+        {
+            agent.setSolvedPositionStore(solvedPositions);
+        }
+        return agent;
+    }
+
+    /**
+     * Returns the table every agent of the factory shares, making it the first time.
+     */
+    public TranspositionTable getTable()
+    {
+        TranspositionTable table = this.table;
+        if (table == null)
+        {
+            synchronized (this)
+            {
+                table = this.table;
+                if (table == null)
+                {
+                    table = new TranspositionTable(tableBytes);
+                    this.table = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Starts a new generation of the shared table now, so that entries stored before it are
+     * the first to be replaced. Call it once per batch when moving games in batches.
+     */
+    public void newGeneration()
+    {
+        TranspositionTable table = getTable();
+        synchronized (table) // one thread at a time, so no generation is skipped or repeated
+        {
+            table.newSearch();
+        }
+    }
+
+    /**
+     * Starts a new generation if the time set by setGenerationMillis() has passed since the
+     * last one. Called by the factory's agents at the start of every move.
+     *
+     * @param nowNanos the System.nanoTime() the move started at
+     */
+    void onMove(long nowNanos)
+    {
+        long millis = generationMillis;
+        long next = nextGenerationNanos.get();
+        if (millis > 0 && nowNanos - next >= 0 && nextGenerationNanos.compareAndSet(next, nowNanos + millis * 1000000L))
+        {
+            newGeneration();
+        }
+    }
+
+    /**
+     * Sets how long each generation of the shared table lasts. Searches already running pick a
+     * new generation up when they next store an entry.
+     *
+     * @param generationMillis the time between generations in milliseconds; 0 to leave every
+     *        generation to newGeneration()
+     */
+    public void setGenerationMillis(long generationMillis)
+    {
+        this.generationMillis = generationMillis;
+        nextGenerationNanos.set(System.nanoTime() + Math.max(0, generationMillis) * 1000000L);
+    }
+
+    /**
+     * Sets the strategy of agents made without one. See MyAgent.setStrategy.
+     */
+    public void setStrategy(MoveStrategy strategy)
+    {
+        this.strategy = (strategy != null) ? strategy : MoveStrategy.DEFAULT;
+    }
+
+    /**
+     * Sets the most moves ahead agents search. See MyAgent.setSearchDepth.
+     */
+    public void setSearchDepth(int searchDepth)
+    {
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * Sets the time each agent's move may take. See MyAgent.setMoveTimeMillis.
+     */
+    public void setMoveTimeMillis(long moveTimeMillis)
+    {
+        this.moveTimeMillis = moveTimeMillis;
+    }
+
+    /**
+     * Sets how few empty slots must be left before agents solve the game exactly. See
+     * MyAgent.setEndgameEmptySlots.
+     */
+    public void setEndgameEmptySlots(int emptySlots)
+    {
+        this.endgameEmptySlots = emptySlots;
+    }
+
+    /**
+     * Sets the memory of each agent's endgame cache, allocated when its game reaches the
+     * endgame. See MyAgent.setEndgameCacheBytes.
+     */
+    public void setEndgameCacheBytes(long cacheBytes)
+    {
+        this.endgameCacheBytes = cacheBytes;
+    }
+
+    /**
+     * Sets the weights agents score undecided positions with. See MyAgent.setEvaluationWeights.
+     */
+    public void setEvaluationWeights(EvaluationWeights weights)
+    {
+        this.evaluationWeights = weights;
+    }
+
+    /**
+     * Sets the opening book every agent consults. See MyAgent.setOpeningBook.
+     *
+     * @param openingBook the book, for the factory's board size; null for none
+     */
+    public void setOpeningBook(OpeningBook openingBook)
+    {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Sets the store of proven positions every agent consults and adds to. See
+     * MyAgent.setSolvedPositionStore.
+     *
+     * @param store the store, for the factory's board size and line length; null for none
+     */
+    public void setSolvedPositionStore(SolvedPositionStore store)
+    {
+        this.solvedPositions = store;
+    }
+
+    /**
+     * Sets the metrics every agent records its moves into. See MyAgent.setMetrics.
+     *
+     * @param metrics the metrics to record into; null to keep none
+     */
+    public void setMetrics(AgentMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the listener told about every agent's moves. It is called from every game's
+     * thread, so it must be thread-safe, as RingBufferDecisionLog is.
+     *
+     * @param decisionListener the listener to report decisions to
+     */
+    public void setDecisionListener(DecisionListener decisionListener)
+    {
+        this.decisionListener = (decisionListener != null) ? decisionListener : DecisionListener.NONE;
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getConnectLength()
+    {
+        return connectLength;
+    }
+}
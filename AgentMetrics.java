@@ -0,0 +1,296 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what agents do move by move: how long each move took, why each column was chosen,
+ * how deep and how fast the search went and how often the transposition table had the answer.
+ * An agent records into it once per move after setMetrics(); register() makes the figures
+ * readable over JMX.
+ *
+ * Every counter is a LongAdder, which spreads concurrent updates over separate cells, so one
+ * AgentMetrics can be shared by any number of agents on any number of threads without them
+ * contending on a single field. Move times go into a histogram with one bucket per power of two
+ * microseconds, so the percentiles read from it are accurate to within a factor of two; the
+ * mean and the maximum are exact. Reading the figures while agents record can mix moves
+ * recorded just before and just after the read, which only matters for the last digit.
+ */
+public class AgentMetrics implements AgentMetricsMBean
+{
+    public static final String DOMAIN = "connect4";
+
+    private static final int BUCKET_COUNT = 40; // bucket i holds moves of under 2^i microseconds; the last holds the rest
+    private static final DecisionReason[] REASONS = DecisionReason.values();
+
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder moveNanos = new LongAdder();
+    private final LongAccumulator maxMoveNanos = new LongAccumulator(Math::max, 0L);
+    private final LongAdder[] moveBuckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder[] decisions = new LongAdder[REASONS.length];
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchDepths = new LongAdder();
+    private final LongAccumulator maxSearchDepth = new LongAccumulator(Math::max, 0L);
+    private final LongAdder searchNodes = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder tableMisses = new LongAdder();
+
+    public AgentMetrics()
+    {
+        for (int i = 0; i < moveBuckets.length; i++)
+        {
+            moveBuckets[i] = new LongAdder();
+        }
+        for (int i = 0; i < decisions.length; i++)
+        {
+            decisions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one move.
+     *
+     * @param reason why the column was chosen
+     * @param elapsedNanos how long the move took
+     */
+    public void recordMove(DecisionReason reason, long elapsedNanos)
+    {
+        moves.increment();
+        moveNanos.add(elapsedNanos);
+        maxMoveNanos.accumulate(elapsedNanos);
+        moveBuckets[bucketOf(elapsedNanos)].increment();
+        decisions[reason.ordinal()].increment();
+    }
+
+    /**
+     * Records the search behind a move that was chosen by searching.
+     *
+     * @param depth the deepest search finished
+     * @param nodes the positions visited, over every search thread
+     * @param elapsedNanos how long the search took
+     * @param hits the transposition table lookups that found their position
+     * @param misses the lookups that did not
+     */
+    public void recordSearch(int depth, long nodes, long elapsedNanos, long hits, long misses)
+    {
+        searches.increment();
+        searchDepths.add(depth);
+        maxSearchDepth.accumulate(depth);
+        searchNodes.add(nodes);
+        searchNanos.add(elapsedNanos);
+        tableHits.add(hits);
+        tableMisses.add(misses);
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server, under the name
+     * connect4:type=AgentMetrics,name=<name>.
+     *
+     * @param name tells these metrics apart from those of other agents in the same JVM
+     * @return the name the metrics were registered under
+     * @throws IllegalStateException if the name is taken or cannot be registered
+     */
+    public ObjectName register(String name)
+    {
+        try
+        {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=AgentMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Could not register the metrics named " + name, e);
+        }
+    }
+
+    /**
+     * Removes metrics registered by register() from the platform MBean server.
+     *
+     * @param objectName the name register() returned
+     */
+    public static void unregister(ObjectName objectName)
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            if (server.isRegistered(objectName))
+            {
+                server.unregisterMBean(objectName);
+            }
+        }
+        catch (JMException e)
+        {
+            throw new IllegalStateException("Could not unregister " + objectName, e);
+        }
+    }
+
+    public long getMoveCount()
+    {
+        return moves.sum();
+    }
+
+    public double getMeanMoveMillis()
+    {
+        long count = moves.sum();
+        return (count == 0) ? 0.0 : moveNanos.sum() / 1e6 / count;
+    }
+
+    public double getMoveMillisP50()
+    {
+        return percentileMillis(0.50);
+    }
+
+    public double getMoveMillisP90()
+    {
+        return percentileMillis(0.90);
+    }
+
+    public double getMoveMillisP99()
+    {
+        return percentileMillis(0.99);
+    }
+
+    public double getMaxMoveMillis()
+    {
+        return maxMoveNanos.get() / 1e6;
+    }
+
+    /**
+     * Returns the positions searched per second over every move chosen by searching.
+     */
+    public double getNodesPerSecond()
+    {
+        long nanos = searchNanos.sum();
+        return (nanos == 0) ? 0.0 : searchNodes.sum() * 1e9 / nanos;
+    }
+
+    /**
+     * Returns the fraction of transposition table lookups that found their position.
+     */
+    public double getTableHitRate()
+    {
+        long hits = tableHits.sum();
+        long lookups = hits + tableMisses.sum();
+        return (lookups == 0) ? 0.0 : (double) hits / lookups;
+    }
+
+    public double getMeanSearchDepth()
+    {
+        long count = searches.sum();
+        return (count == 0) ? 0.0 : (double) searchDepths.sum() / count;
+    }
+
+    public long getMaxSearchDepth()
+    {
+        return maxSearchDepth.get();
+    }
+
+    public long getWinDecisions()
+    {
+        return getDecisions(DecisionReason.WIN);
+    }
+
+    public long getBlockDecisions()
+    {
+        return getDecisions(DecisionReason.BLOCK);
+    }
+
+    public long getBookDecisions()
+    {
+        return getDecisions(DecisionReason.BOOK);
+    }
+
+    public long getStoredDecisions()
+    {
+        return getDecisions(DecisionReason.STORED);
+    }
+
+    public long getEndgameDecisions()
+    {
+        return getDecisions(DecisionReason.ENDGAME);
+    }
+
+    public long getSearchDecisions()
+    {
+        return getDecisions(DecisionReason.SEARCH);
+    }
+
+    public long getMonteCarloDecisions()
+    {
+        return getDecisions(DecisionReason.MONTE_CARLO);
+    }
+
+    public long getRandomDecisions()
+    {
+        return getDecisions(DecisionReason.RANDOM);
+    }
+
+    /**
+     * Returns how many moves were chosen for a reason.
+     *
+     * @param reason the reason to count
+     */
+    public long getDecisions(DecisionReason reason)
+    {
+        return decisions[reason.ordinal()].sum();
+    }
+
+    /**
+     * Sets every figure back to zero. Moves recorded while the reset runs may be half counted.
+     */
+    public void reset()
+    {
+        moves.reset();
+        moveNanos.reset();
+        maxMoveNanos.reset();
+        for (int i = 0; i < moveBuckets.length; i++)
+        {
+            moveBuckets[i].reset();
+        }
+        for (int i = 0; i < decisions.length; i++)
+        {
+            decisions[i].reset();
+        }
+        searches.reset();
+        searchDepths.reset();
+        maxSearchDepth.reset();
+        searchNodes.reset();
+        searchNanos.reset();
+        tableHits.reset();
+        tableMisses.reset();
+    }
+
+    /**
+     * Returns the upper edge of the histogram bucket holding the given fraction of moves, capped
+     * at the slowest move recorded.
+     */
+    private double percentileMillis(double fraction)
+    {
+        long count = moves.sum();
+        if (count == 0)
+        {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < moveBuckets.length; i++)
+        {
+            seen += moveBuckets[i].sum();
+            if (seen >= rank)
+            {
+                return Math.min((1L << i) / 1e3, getMaxMoveMillis());
+            }
+        }
+        return getMaxMoveMillis();
+    }
+
+    private static int bucketOf(long elapsedNanos)
+    {
+        long micros = Math.max(0L, elapsedNanos / 1000);
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros)); // under 2^i micros lands in bucket i
+    }
+}
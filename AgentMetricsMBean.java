@@ -0,0 +1,44 @@
+/**
+ * The management interface of AgentMetrics, as seen from a JMX console such as JConsole.
+ * Times are in milliseconds; every figure covers the moves since the last reset().
+ */
+public interface AgentMetricsMBean
+{
+    long getMoveCount();
+
+    double getMeanMoveMillis();
+
+    double getMoveMillisP50();
+
+    double getMoveMillisP90();
+
+    double getMoveMillisP99();
+
+    double getMaxMoveMillis();
+
+    double getNodesPerSecond();
+
+    double getTableHitRate();
+
+    double getMeanSearchDepth();
+
+    long getMaxSearchDepth();
+
+    long getWinDecisions();
+
+    long getBlockDecisions();
+
+    long getBookDecisions();
+
+    long getStoredDecisions();
+
+    long getEndgameDecisions();
+
+    long getSearchDecisions();
+
+    long getMonteCarloDecisions();
+
+    long getRandomDecisions();
+
+    void reset();
+}
@@ -0,0 +1,313 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Chooses moves for many games at once, for a server that hosts many games and needs a move
+ * in each of them every turn.
+ *
+ * A BatchMover keeps a fixed set of workers, each a MyAgent that is switched from game to game,
+ * and all of them keep their search results in one shared TranspositionTable. Positions are
+ * identified by their Zobrist hash alone, so results stored while searching one game are found
+ * again in any other game that reaches the same position, which is common when many games are
+ * in their openings. The workers take the games of a batch one at a time from a shared counter
+ * until none are left, so a slow game does not hold up the rest.
+ *
+ * One worker runs on the thread that hands in the batch; the others run on helper threads
+ * that are started once and parked between batches, as in ParallelSearch. Handing a batch out
+ * only writes a few volatile fields, so a batch allocates nothing.
+ *
+ * Every game is decided exactly as MyAgent.move() would decide it: a win, then a block, then
+ * the opening book, the endgame solver and the search, each game with the full time budget
+ * set by setMoveTimeMillis(), unless setStrategy() gives another MoveStrategy.
+ */
+public class BatchMover
+{
+    private final TranspositionTable table;
+    private final MyAgent[] workers;
+    private final Helper[] helpers; // helpers[i] runs workers[i + 1]
+    private DecisionListener decisionListener = DecisionListener.NONE;
+    private AgentMetrics metrics; // null when no metrics are kept
+
+    // the batch being worked on; written before round is bumped
+    private Connect4Game[] games;
+    private boolean[] redToMove;
+    private int[] columns;
+    private boolean placeTokens;
+    private final AtomicInteger nextGame = new AtomicInteger();
+
+    private volatile Thread caller; // the thread waiting for the helpers to finish
+    private volatile boolean shutdown;
+    private int round;
+
+    /**
+     * Constructs a batch mover for games of one board size and starts its helper threads.
+     *
+     * @param columnCount the number of columns of every game
+     * @param rowCount the number of rows of every game
+     * @param tableBytes the memory the shared transposition table may use
+     * @param threadCount the number of games worked on at once, including the calling thread
+     */
+    public BatchMover(int columnCount, int rowCount, long tableBytes, int threadCount)
+    {
+        table = new TranspositionTable(tableBytes);
+        workers = new MyAgent[Math.max(1, threadCount)];
+        Connect4Game placeholder = new Connect4Game(columnCount, rowCount); // every worker is switched to a real game before it moves
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i] = new MyAgent(placeholder, true, table);
+            if (workers[i].search != null) // boards too large for a bitboard search with a GeneralSearch instead
+            {
+                workers[i].search.setAgesTable(false); // one generation per batch, not one per game
+            }
+            else
+            {
+                workers[i].generalSearch.setAgesTable(false);
+            }
+        }
+        helpers = new Helper[workers.length - 1];
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i] = new Helper(workers[i + 1]);
+            helpers[i].thread = new Thread(helpers[i], "BatchMover worker " + (i + 1));
+            helpers[i].thread.setDaemon(true);
+            helpers[i].thread.start();
+        }
+    }
+
+    /**
+     * Sets how every game's move is chosen. See MyAgent.setStrategy.
+     */
+    public void setStrategy(MoveStrategy strategy)
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].setStrategy(strategy);
+        }
+    }
+
+    /**
+     * Sets the most moves ahead each game is searched. See MyAgent.setSearchDepth.
+     */
+    public void setSearchDepth(int searchDepth)
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].setSearchDepth(searchDepth);
+        }
+    }
+
+    /**
+     * Sets the time each game's move may take; a batch takes about this long per game, divided
+     * by the thread count. See MyAgent.setMoveTimeMillis.
+     */
+    public void setMoveTimeMillis(long moveTimeMillis)
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].setMoveTimeMillis(moveTimeMillis);
+        }
+    }
+
+    /**
+     * Sets the opening book consulted for every game. See MyAgent.setOpeningBook.
+     */
+    public void setOpeningBook(OpeningBook openingBook)
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].setOpeningBook(openingBook);
+        }
+    }
+
+    /**
+     * Sets how few empty slots must be left before a game is solved exactly. See
+     * MyAgent.setEndgameEmptySlots.
+     */
+    public void setEndgameEmptySlots(int emptySlots)
+    {
+        for (int i = 0; i < workers.length; i++)
+        {
+            workers[i].setEndgameEmptySlots(emptySlots);
+        }
+    }
+
+    /**
+     * Sets the listener told about every move chosen. It is called from every worker thread,
+     * so it must be thread-safe, as RingBufferDecisionLog is.
+     *
+     * @param decisionListener the listener to report decisions to
+     */
+    public void setDecisionListener(DecisionListener decisionListener)
+    {
+        this.decisionListener = (decisionListener != null) ? decisionListener : DecisionListener.NONE;
+    }
+
+    /**
+     * Sets the metrics every move chosen is recorded into. See MyAgent.setMetrics.
+     *
+     * @param metrics the metrics to record into; null to keep none
+     */
+    public void setMetrics(AgentMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Chooses a column for each game, without changing the games.
+     *
+     * @param games the games to move in; none may be full or already won
+     * @param redToMove for each game, true if Red is to move and false if Yellow is
+     * @param columns receives the column chosen for each game; -1 for a game that failed
+     */
+    public void chooseColumns(Connect4Game[] games, boolean[] redToMove, int[] columns)
+    {
+        runBatch(games, redToMove, columns, false);
+    }
+
+    /**
+     * Chooses a column for each game and drops the player's token into it, as move() would.
+     *
+     * @param games the games to move in; none may be full or already won
+     * @param redToMove for each game, true if Red is to move and false if Yellow is
+     * @param columns receives the column played in each game; -1 for a game that failed
+     */
+    public void moveAll(Connect4Game[] games, boolean[] redToMove, int[] columns)
+    {
+        runBatch(games, redToMove, columns, true);
+    }
+
+    /**
+     * Forgets every search result stored by earlier batches.
+     */
+    public void clearTable()
+    {
+        table.clear();
+    }
+
+    /**
+     * Stops the helper threads. The batch mover must not be used afterwards.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            LockSupport.unpark(helpers[i].thread);
+        }
+    }
+
+    private void runBatch(Connect4Game[] games, boolean[] redToMove, int[] columns, boolean placeTokens)
+    {
+        if (redToMove.length < games.length || columns.length < games.length)
+        {
+            throw new IllegalArgumentException("Need a color to move and a result slot for each of the " + games.length + " games");
+        }
+        this.games = games;
+        this.redToMove = redToMove;
+        this.columns = columns;
+        this.placeTokens = placeTokens;
+        nextGame.set(0);
+        table.newSearch();
+
+        caller = Thread.currentThread();
+        round++;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i].requestedRound = round; // volatile write publishes the batch above
+            LockSupport.unpark(helpers[i].thread);
+        }
+
+        try
+        {
+            work(workers[0]);
+        }
+        finally // even if a listener threw, the helpers must be done with the batch before it is dropped
+        {
+            for (int i = 0; i < helpers.length; i++)
+            {
+                while (helpers[i].finishedRound != round && !shutdown)
+                {
+                    LockSupport.park(this);
+                }
+            }
+            this.games = null; // do not keep the caller's arrays reachable between batches
+            this.redToMove = null;
+            this.columns = null;
+        }
+    }
+
+    /**
+     * Moves in games of the current batch with one worker until every game has been taken.
+     */
+    private void work(MyAgent worker)
+    {
+        for (int i = nextGame.getAndIncrement(); i < games.length; i = nextGame.getAndIncrement())
+        {
+            columns[i] = -1; // stays -1 if the choice throws
+            long startNanos = System.nanoTime();
+            long deadlineNanos = startNanos + worker.moveTimeMillis * 1000000L * 9 / 10;
+            int column;
+            try
+            {
+                worker.switchGame(games[i], redToMove[i]);
+                column = worker.chooseColumn(deadlineNanos);
+                if (placeTokens)
+                {
+                    worker.moveOnColumn(column);
+                }
+            }
+            catch (RuntimeException e)
+            {
+                continue; // this game keeps -1; the worker goes on with the rest of the batch
+            }
+            columns[i] = column;
+            long elapsedNanos = System.nanoTime() - startNanos;
+            decisionListener.onDecision(column, worker.lastReason, worker.lastDepth, elapsedNanos);
+            AgentMetrics metrics = this.metrics;
+            if (metrics != null)
+            {
+                worker.recordMetrics(metrics, elapsedNanos);
+            }
+        }
+    }
+
+    /**
+     * One helper thread, working on batches with its own worker.
+     */
+    private final class Helper implements Runnable
+    {
+        final MyAgent worker;
+        Thread thread;
+
+        volatile int requestedRound;
+        volatile int finishedRound;
+
+        Helper(MyAgent worker)
+        {
+            this.worker = worker;
+        }
+
+        public void run()
+        {
+            while (!shutdown)
+            {
+                int requested = requestedRound;
+                if (requested == finishedRound)
+                {
+                    LockSupport.park(this);
+                    continue;
+                }
+                try
+                {
+                    work(worker);
+                }
+                catch (RuntimeException e)
+                {
+                    // a listener or metrics threw; the games this worker had not taken are left to the other workers
+                }
+                finishedRound = requested;
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+}
@@ -0,0 +1,614 @@
+/**
+ * A compact bitboard copy of a Connect4Game.
+ *
+ * Each column is stored as rowCount + 1 consecutive bits, bottom row first, with one spare bit
+ * on top of every column so that shifts never wrap from one column into the next. Red and
+ * Yellow tokens are each kept in their own long mask, and the number of tokens in every column
+ * is kept in a heights array.
+ *
+ * Row numbers in this class count up from the bottom of the board (row 0 is the bottom row),
+ * which is the opposite of the slot indexes used by Connect4Column, where slot 0 is the top.
+ *
+ * A position and its mirror image, with every column swapped with the one the same distance
+ * from the other edge, are worth the same, so caches key positions by getCanonicalHash(), the
+ * same for both, and mirror the columns they store with mirrorColumn(). The mirror image's
+ * hash is kept up to date alongside the position's own.
+ *
+ * A line of any length can be played for, not only four. Lines of four take the shortest
+ * paths, shifting the whole board by up to three columns at once, as long as those shifts stay
+ * under 64 bits; other lengths, and boards tall enough that they would not, loop over the cells
+ * of a line with shifts that give 0 instead of wrapping. Boards whose cells do not all fit in one
+ * long (see fits()) are left to GeneralBoard.
+ */
+public class Connect4Bitboard
+{
+    // one random number per color per bit, shared by every board so hashes can be compared
+    private static final long[] RED_KEYS = new long[64];
+    private static final long[] YELLOW_KEYS = new long[64];
+    private static final long YELLOW_TO_MOVE_KEY;
+
+    static
+    {
+        java.util.Random random = new java.util.Random(0x436F6E6E65637434L); // fixed so hashes are repeatable
+        for (int i = 0; i < 64; i++)
+        {
+            RED_KEYS[i] = random.nextLong();
+            YELLOW_KEYS[i] = random.nextLong();
+        }
+        YELLOW_TO_MOVE_KEY = random.nextLong();
+    }
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int columnStride; // bits used by one column, including the spare bit
+    private final int connectLength; // the tokens in a row that win
+    private final boolean shortShifts; // whether three diagonal steps, the longest shift of the four-in-a-row paths, stay under 64 bits
+
+    private final long bottomMask; // the bottom cell of every column
+    private final long boardMask;  // every playable cell of the board
+
+    private long redMask;
+    private long yellowMask;
+    private final int[] heights;
+    private int moveCount;
+    private long hash; // Zobrist hash of the tokens on the board, kept up to date by play and undo
+    private long mirrorHash; // the hash of the board's mirror image
+
+    /**
+     * Constructs an empty bitboard of the given size, for four in a row.
+     *
+     * @param columnCount the number of columns on the board
+     * @param rowCount the number of rows on the board
+     */
+    public Connect4Bitboard(int columnCount, int rowCount)
+    {
+        this(columnCount, rowCount, 4);
+    }
+
+    /**
+     * Constructs an empty bitboard of the given size.
+     *
+     * @param columnCount the number of columns on the board
+     * @param rowCount the number of rows on the board
+     * @param connectLength the number of tokens in a row that wins
+     */
+    public Connect4Bitboard(int columnCount, int rowCount, int connectLength)
+    {
+        if (!fits(columnCount, rowCount))
+        {
+            throw new IllegalArgumentException("A " + columnCount + "x" + rowCount + " board does not fit in a bitboard");
+        }
+        if (connectLength < 2)
+        {
+            throw new IllegalArgumentException("A line must be at least 2 tokens long, not " + connectLength);
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.columnStride = rowCount + 1;
+        this.connectLength = connectLength;
+        this.shortShifts = 3 * (columnStride + 1) < 64;
+        this.heights = new int[columnCount];
+
+        long bottom = 0L;
+        for (int c = 0; c < columnCount; c++)
+        {
+            bottom |= 1L << (c * columnStride);
+        }
+        this.bottomMask = bottom;
+        this.boardMask = bottom * ((1L << rowCount) - 1);
+    }
+
+    /**
+     * Returns whether a board of the given size fits in a bitboard: every column needs its rows
+     * plus one spare bit, and all of them must fit in one long.
+     *
+     * @param columnCount the number of columns on the board
+     * @param rowCount the number of rows on the board
+     */
+    public static boolean fits(int columnCount, int rowCount)
+    {
+        return columnCount > 0 && rowCount > 0 && columnCount * (rowCount + 1) <= 64;
+    }
+
+    /**
+     * Copies every slot of the game into this bitboard, replacing whatever it held before.
+     *
+     * @param game the game to copy; must have the same size as this bitboard
+     */
+    public void sync(Connect4Game game)
+    {
+        redMask = 0L;
+        yellowMask = 0L;
+        moveCount = 0;
+        hash = 0L;
+        mirrorHash = 0L;
+        for (int c = 0; c < columnCount; c++)
+        {
+            Connect4Column column = game.getColumn(c);
+            int height = 0;
+            for (int slotIndex = rowCount - 1; slotIndex >= 0; slotIndex--) // bottom slot first
+            {
+                Connect4Slot slot = column.getSlot(slotIndex);
+                if (!slot.getIsFilled())
+                {
+                    break;
+                }
+                int bitIndex = c * columnStride + height;
+                int mirrorIndex = (columnCount - 1 - c) * columnStride + height;
+                if (slot.getIsRed())
+                {
+                    redMask |= 1L << bitIndex;
+                    hash ^= RED_KEYS[bitIndex];
+                    mirrorHash ^= RED_KEYS[mirrorIndex];
+                }
+                else
+                {
+                    yellowMask |= 1L << bitIndex;
+                    hash ^= YELLOW_KEYS[bitIndex];
+                    mirrorHash ^= YELLOW_KEYS[mirrorIndex];
+                }
+                height++;
+            }
+            heights[c] = height;
+            moveCount += height;
+        }
+    }
+
+    /**
+     * Brings this bitboard up to date with the game it copies, assuming at most one token has
+     * been added since it was last up to date. Only the slots at the top of each column are
+     * read. If the game does not look like this bitboard plus at most one token (a new game was
+     * started, say, or several tokens were added) the whole game is copied again with sync().
+     *
+     * @param game the game to copy; must have the same size as this bitboard
+     * @return true if the update was incremental; false if the whole game had to be copied
+     */
+    public boolean update(Connect4Game game)
+    {
+        int addedColumn = -1;
+        for (int c = 0; c < columnCount; c++)
+        {
+            Connect4Column column = game.getColumn(c);
+            int height = heights[c];
+            if (height > 0 && !column.getSlot(rowCount - height).getIsFilled()) // our top token is gone
+            {
+                sync(game);
+                return false;
+            }
+            if (height < rowCount && column.getSlot(rowCount - 1 - height).getIsFilled()) // a new token
+            {
+                if (addedColumn != -1)
+                {
+                    sync(game);
+                    return false;
+                }
+                addedColumn = c;
+            }
+        }
+        if (addedColumn != -1)
+        {
+            Connect4Column column = game.getColumn(addedColumn);
+            int height = heights[addedColumn];
+            if (height + 1 < rowCount && column.getSlot(rowCount - 2 - height).getIsFilled()) // two new tokens in one column
+            {
+                sync(game);
+                return false;
+            }
+            play(addedColumn, column.getSlot(rowCount - 1 - height).getIsRed());
+        }
+        return true;
+    }
+
+    /**
+     * Makes this bitboard a copy of another bitboard of the same size.
+     *
+     * @param other the bitboard to copy
+     */
+    public void copyFrom(Connect4Bitboard other)
+    {
+        redMask = other.redMask;
+        yellowMask = other.yellowMask;
+        moveCount = other.moveCount;
+        hash = other.hash;
+        mirrorHash = other.mirrorHash;
+        System.arraycopy(other.heights, 0, heights, 0, columnCount);
+    }
+
+    /**
+     * Drops a token into a column. The column must not be full.
+     *
+     * @param column the column to play in
+     * @param red true to drop a Red token, false to drop a Yellow token
+     */
+    public void play(int column, boolean red)
+    {
+        int bitIndex = column * columnStride + heights[column];
+        int mirrorIndex = (columnCount - 1 - column) * columnStride + heights[column];
+        if (red)
+        {
+            redMask |= 1L << bitIndex;
+            hash ^= RED_KEYS[bitIndex];
+            mirrorHash ^= RED_KEYS[mirrorIndex];
+        }
+        else
+        {
+            yellowMask |= 1L << bitIndex;
+            hash ^= YELLOW_KEYS[bitIndex];
+            mirrorHash ^= YELLOW_KEYS[mirrorIndex];
+        }
+        heights[column]++;
+        moveCount++;
+    }
+
+    /**
+     * Removes the top token of a column. The column must not be empty.
+     *
+     * @param column the column to take the token back from
+     */
+    public void undo(int column)
+    {
+        heights[column]--;
+        moveCount--;
+        int bitIndex = column * columnStride + heights[column];
+        int mirrorIndex = (columnCount - 1 - column) * columnStride + heights[column];
+        long bit = 1L << bitIndex;
+        if ((redMask & bit) != 0)
+        {
+            redMask &= ~bit;
+            hash ^= RED_KEYS[bitIndex];
+            mirrorHash ^= RED_KEYS[mirrorIndex];
+        }
+        else
+        {
+            yellowMask &= ~bit;
+            hash ^= YELLOW_KEYS[bitIndex];
+            mirrorHash ^= YELLOW_KEYS[mirrorIndex];
+        }
+    }
+
+    public boolean canPlay(int column)
+    {
+        return heights[column] < rowCount;
+    }
+
+    public int getHeight(int column)
+    {
+        return heights[column];
+    }
+
+    /**
+     * Returns the Connect4Column slot index of the top empty slot in a column.
+     *
+     * @param column the column to check
+     * @return the slot index of the top empty slot; -1 if the column is full
+     */
+    public int getLowestEmptyIndex(int column)
+    {
+        return rowCount - 1 - heights[column];
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getConnectLength()
+    {
+        return connectLength;
+    }
+
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+
+    public boolean isFull()
+    {
+        return moveCount == columnCount * rowCount;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position with the given player to move.
+     *
+     * @param redToMove true if Red is to move, false if Yellow is to move
+     */
+    public long getHash(boolean redToMove)
+    {
+        return redToMove ? hash : hash ^ YELLOW_TO_MOVE_KEY;
+    }
+
+    /**
+     * Returns the hash shared by the position and its mirror image: the smaller of the two
+     * positions' hashes. If it is not the position's own getHash(), columns stored under it
+     * belong to the mirror image and must be put through mirrorColumn().
+     *
+     * @param redToMove true if Red is to move, false if Yellow is to move
+     */
+    public long getCanonicalHash(boolean redToMove)
+    {
+        long mirrored = redToMove ? mirrorHash : mirrorHash ^ YELLOW_TO_MOVE_KEY;
+        return Math.min(getHash(redToMove), mirrored);
+    }
+
+    /**
+     * Returns the column a column becomes in the mirror image of the board.
+     *
+     * @param column the column to mirror
+     */
+    public int mirrorColumn(int column)
+    {
+        return columnCount - 1 - column;
+    }
+
+    public long getMask(boolean red)
+    {
+        return red ? redMask : yellowMask;
+    }
+
+    /**
+     * Returns the mask of every filled cell.
+     */
+    public long getOccupiedMask()
+    {
+        return redMask | yellowMask;
+    }
+
+    /**
+     * Returns the mask of the cells a token would land in if it were dropped in each column.
+     */
+    public long getPlayableMask()
+    {
+        return (getOccupiedMask() + bottomMask) & boardMask;
+    }
+
+    /**
+     * Returns the bit of one cell.
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell, counted from the bottom
+     */
+    public long cellBit(int column, int row)
+    {
+        return 1L << (column * columnStride + row);
+    }
+
+    /**
+     * Returns the mask of every cell in a column.
+     */
+    public long columnMask(int column)
+    {
+        return ((1L << rowCount) - 1) << (column * columnStride);
+    }
+
+    /**
+     * Returns the empty cells that would complete a winning line for a player.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     */
+    public long winningCells(boolean red)
+    {
+        return winningCells(getMask(red), getOccupiedMask());
+    }
+
+    /**
+     * Returns the empty cells that would complete a winning line for a player once they had
+     * also filled one more cell.
+     *
+     * @param cell the cell the player fills first; must be empty
+     * @param red true to check for Red, false to check for Yellow
+     */
+    public long winningCellsWith(long cell, boolean red)
+    {
+        return winningCells(getMask(red) | cell, getOccupiedMask() | cell);
+    }
+
+    /**
+     * Returns the cells that the player could fill right now to win.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     */
+    public long playableWinningCells(boolean red)
+    {
+        return winningCells(red) & getPlayableMask();
+    }
+
+    /**
+     * Returns the cells a player could fill right now without letting the opponent win on their
+     * next move: if the opponent has a winning cell the player can fill, only that cell is left,
+     * and cells directly beneath an opponent's winning cell are left out. The player's own
+     * immediate wins are not taken into account.
+     *
+     * @param red true for Red's moves, false for Yellow's
+     * @return the playable cells that do not lose at once; 0 if every move loses
+     */
+    public long nonLosingCells(boolean red)
+    {
+        long playable = getPlayableMask();
+        long theirWins = winningCells(!red);
+        long forced = playable & theirWins;
+        if (forced != 0)
+        {
+            if ((forced & (forced - 1)) != 0)
+            {
+                return 0; // two cells to block and only one token
+            }
+            playable = forced;
+        }
+        return playable & ~(theirWins >>> 1); // don't fill the cell beneath one of their wins
+    }
+
+    /**
+     * Returns the column of a cell.
+     *
+     * @param cell a mask with a single cell set
+     */
+    public int columnOf(long cell)
+    {
+        return Long.numberOfTrailingZeros(cell) / columnStride;
+    }
+
+    /**
+     * Returns the leftmost column in which a player can win on this move.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     * @return the winning column; -1 if the player has no immediate win
+     */
+    public int findWinningColumn(boolean red)
+    {
+        long wins = playableWinningCells(red);
+        if (wins == 0)
+        {
+            return -1;
+        }
+        return Long.numberOfTrailingZeros(wins) / columnStride;
+    }
+
+    /**
+     * Returns whether dropping a token in a column would let a player win by dropping the next
+     * token on top of it.
+     *
+     * @param column the column that is about to be played
+     * @param red true to check whether Red would be handed the win, false for Yellow
+     */
+    public boolean offersWinAbove(int column, boolean red)
+    {
+        if (heights[column] + 1 >= rowCount)
+        {
+            return false;
+        }
+        return (winningCells(red) & cellBit(column, heights[column] + 1)) != 0;
+    }
+
+    /**
+     * Returns whether a mask holds a winning line, connectLength tokens in a row.
+     *
+     * @param tokens the tokens of one player
+     */
+    public boolean hasWinningLine(long tokens)
+    {
+        if (connectLength == 4 && shortShifts)
+        {
+            return hasFourInARow(tokens);
+        }
+        return hasRun(tokens, 1, connectLength)
+            || hasRun(tokens, columnStride, connectLength)
+            || hasRun(tokens, columnStride - 1, connectLength)
+            || hasRun(tokens, columnStride + 1, connectLength);
+    }
+
+    /**
+     * Returns whether a mask holds four tokens in a row, whatever the length of a winning line.
+     *
+     * @param tokens the tokens of one player
+     */
+    public boolean hasFourInARow(long tokens)
+    {
+        if (!shortShifts)
+        {
+            return hasRun(tokens, 1, 4)
+                || hasRun(tokens, columnStride, 4)
+                || hasRun(tokens, columnStride - 1, 4)
+                || hasRun(tokens, columnStride + 1, 4);
+        }
+        return hasRun(tokens, 1)                   // vertical
+            || hasRun(tokens, columnStride)        // horizontal
+            || hasRun(tokens, columnStride - 1)    // diagonal going down to the right
+            || hasRun(tokens, columnStride + 1);   // diagonal going up to the right
+    }
+
+    private static boolean hasRun(long tokens, int shift)
+    {
+        long pairs = tokens & (tokens >>> shift);
+        return (pairs & (pairs >>> (2 * shift))) != 0;
+    }
+
+    private static boolean hasRun(long tokens, int shift, int length)
+    {
+        long run = tokens;
+        for (int k = 1; k < length && run != 0; k++)
+        {
+            run &= shiftDown(tokens, k * shift);
+        }
+        return run != 0;
+    }
+
+    /**
+     * Returns the empty cells that would complete a winning line for the given tokens.
+     *
+     * @param tokens the tokens of one player
+     * @param occupied every filled cell of the board
+     */
+    private long winningCells(long tokens, long occupied)
+    {
+        if (connectLength != 4 || !shortShifts)
+        {
+            long cells = lineCells(tokens, 1, connectLength);
+            cells |= lineCells(tokens, columnStride, connectLength);
+            cells |= lineCells(tokens, columnStride - 1, connectLength);
+            cells |= lineCells(tokens, columnStride + 1, connectLength);
+            return cells & (boardMask ^ occupied);
+        }
+        long cells = (tokens << 1) & (tokens << 2) & (tokens << 3); // three tokens below
+
+        cells |= lineCells(tokens, columnStride);
+        cells |= lineCells(tokens, columnStride - 1);
+        cells |= lineCells(tokens, columnStride + 1);
+
+        return cells & (boardMask ^ occupied);
+    }
+
+    private static long lineCells(long tokens, int shift)
+    {
+        long cells = 0L;
+        long pair = (tokens << shift) & (tokens << (2 * shift)); // two tokens on one side
+        cells |= pair & (tokens << (3 * shift));
+        cells |= pair & (tokens >>> shift);
+        pair = (tokens >>> shift) & (tokens >>> (2 * shift)); // two tokens on the other side
+        cells |= pair & (tokens << shift);
+        cells |= pair & (tokens >>> (3 * shift));
+        return cells;
+    }
+
+    /**
+     * Returns the cells that would complete a line of the given length in one direction: for
+     * each place the empty cell could take in the line, the cells whose other length - 1 cells
+     * along the line all hold tokens.
+     */
+    private static long lineCells(long tokens, int shift, int length)
+    {
+        long cells = 0L;
+        for (int gap = 0; gap < length; gap++) // how many of the line's cells come before the empty one
+        {
+            long line = -1L;
+            for (int k = -gap; k < length - gap && line != 0; k++)
+            {
+                if (k > 0)
+                {
+                    line &= shiftDown(tokens, k * shift);
+                }
+                else if (k < 0)
+                {
+                    line &= shiftUp(tokens, -k * shift);
+                }
+            }
+            cells |= line;
+        }
+        return cells;
+    }
+
+    // shifts that give 0 rather than wrapping around once a line runs off the end of the long
+    private static long shiftDown(long tokens, int bits)
+    {
+        return (bits < 64) ? tokens >>> bits : 0L;
+    }
+
+    private static long shiftUp(long tokens, int bits)
+    {
+        return (bits < 64) ? tokens << bits : 0L;
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Receives every decision an agent makes. MyAgent calls it on the game thread once per move,
+ * after the token has been placed, so implementations should return quickly and must be safe to
+ * call from many agents at once if they are shared.
+ */
+public interface DecisionListener
+{
+    /**
+     * A listener that ignores every decision. Agents use it until they are given another one.
+     */
+    DecisionListener NONE = new DecisionListener()
+    {
+        public void onDecision(int column, DecisionReason reason, int searchDepth, long elapsedNanos)
+        {
+        }
+    };
+
+    /**
+     * Called after the agent has played a column.
+     *
+     * @param column the column the agent played
+     * @param reason why the agent played it
+     * @param searchDepth the deepest search the agent finished on this move; 0 if it did not search
+     * @param elapsedNanos how long the move took
+     */
+    void onDecision(int column, DecisionReason reason, int searchDepth, long elapsedNanos);
+}
@@ -0,0 +1,14 @@
+/**
+ * Why the agent chose the column it played.
+ */
+public enum DecisionReason
+{
+    WIN,    // the column wins the game
+    BLOCK,  // the column stops the opponent from winning on their next move
+    BOOK,   // the opening book holds the column as best
+    STORED, // an earlier game proved the column best and kept it in the SolvedPositionStore
+    ENDGAME, // the endgame solver proved the column best
+    SEARCH, // the search found the column best
+    MONTE_CARLO, // the Monte Carlo tree search visited the column most
+    RANDOM  // the column was picked at random from the safe ones, because searching is turned off
+}
@@ -0,0 +1,287 @@
+/**
+ * Solves positions near the end of the game exactly, by searching every line to the end.
+ *
+ * Scores use the same scale as NegamaxSearch: from the point of view of the player to move, a
+ * win scores NegamaxSearch.WIN_SCORE minus the number of tokens on the board when it is
+ * completed, a loss the negative of that, and a draw 0.
+ *
+ * The exact score is found by a series of null-window searches, each of which only decides
+ * whether the score is above or below one value, halving the range of possible scores every
+ * time. Null-window searches prune far more than full-window ones. Bounds proven by them are
+ * kept in the solver's own small cache, separate from the agent's transposition table, and
+ * moves are only ever searched if they do not hand the opponent an immediate win.
+ */
+public class EndgameSolver
+{
+    public static final int UNKNOWN = Integer.MIN_VALUE; // returned when the deadline passes first
+
+    public static final long DEFAULT_CACHE_BYTES = 1024 * 1024;
+
+    private static final int NODES_BETWEEN_CLOCK_CHECKS = 1024;
+    private static final int LOWER = 1; // cached value is a lower bound
+    private static final int UPPER = 2; // cached value is an upper bound
+
+    private final Connect4Bitboard board;
+    private final int slotCount;
+    private final int[] columnOrder;
+    private final int[][] moveBuffers; // candidate columns for each ply, so sorting them allocates nothing
+    private final int[][] moveScores;
+    private final long[] cache; // pairs of (hash XOR data, data); data = bound type << 32 | score
+    private final int cacheMask;
+
+    private long deadlineNanos;
+    private boolean timedOut;
+    private long nodeCount;
+    private int rootMoveCount;
+    private int bestColumn;
+    private int score;
+
+    /**
+     * Constructs a solver over the given bitboard. The solver plays and takes back moves on the
+     * bitboard while it runs and leaves it as it found it.
+     *
+     * @param board the board to solve
+     * @param cacheBytes the memory the solver's cache may use
+     */
+    public EndgameSolver(Connect4Bitboard board, long cacheBytes)
+    {
+        this.board = board;
+        this.slotCount = board.getColumnCount() * board.getRowCount();
+        this.columnOrder = NegamaxSearch.centerFirstOrder(board.getColumnCount());
+        this.moveBuffers = new int[slotCount + 1][board.getColumnCount()];
+        this.moveScores = new int[slotCount + 1][board.getColumnCount()];
+        int entries = (int) Math.min(1 << 28, Long.highestOneBit(Math.max(2, cacheBytes / 16)));
+        this.cache = new long[entries * 2];
+        this.cacheMask = entries - 1;
+    }
+
+    /**
+     * Solves the current position.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param deadlineNanos the System.nanoTime() by which the solver must give up
+     * @return the exact score of the position; UNKNOWN if it could not be solved in time
+     */
+    public int solve(boolean red, long deadlineNanos)
+    {
+        this.deadlineNanos = deadlineNanos;
+        timedOut = false;
+        nodeCount = 0;
+        rootMoveCount = board.getMoveCount();
+        bestColumn = -1;
+        score = UNKNOWN;
+
+        int forced = board.findWinningColumn(red);
+        if (forced != -1)
+        {
+            bestColumn = forced;
+            score = NegamaxSearch.WIN_SCORE - (rootMoveCount + 1);
+            return score;
+        }
+        long nonLosing = board.nonLosingCells(red);
+        long playable = board.getPlayableMask();
+        // something to play even if every move loses or the deadline passes at once
+        bestColumn = board.columnOf(Long.lowestOneBit((nonLosing != 0) ? nonLosing : playable));
+
+        int min = -(NegamaxSearch.WIN_SCORE - (rootMoveCount + 2)); // losing on their very next move
+        int max = NegamaxSearch.WIN_SCORE - (rootMoveCount + 1);    // winning with this move
+        while (min < max)
+        {
+            int middle = min + (max - min) / 2;
+            if (middle <= 0 && min / 2 < middle)
+            {
+                middle = min / 2; // probe closer to zero first, where most endgame scores lie
+            }
+            else if (middle >= 0 && max / 2 > middle)
+            {
+                middle = max / 2;
+            }
+            int result = negamax(red, middle, middle + 1);
+            if (timedOut)
+            {
+                return UNKNOWN;
+            }
+            if (result <= middle)
+            {
+                max = result;
+            }
+            else
+            {
+                min = result;
+            }
+        }
+        score = min;
+        return score;
+    }
+
+    /**
+     * Returns the best column found by the last solve(); a column that reaches its score.
+     */
+    public int getBestColumn()
+    {
+        return bestColumn;
+    }
+
+    /**
+     * Returns the score found by the last solve(); UNKNOWN if it could not be solved in time.
+     */
+    public int getScore()
+    {
+        return score;
+    }
+
+    /**
+     * Returns the number of tokens still to be played before the game ends with the last
+     * solved score, counting the token about to be played; 0 for a draw.
+     */
+    public int getDistance()
+    {
+        if (score == UNKNOWN || score == 0)
+        {
+            return 0;
+        }
+        return NegamaxSearch.WIN_SCORE - Math.abs(score) - rootMoveCount;
+    }
+
+    /**
+     * Returns the number of positions visited by the last solve().
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    private int negamax(boolean red, int alpha, int beta)
+    {
+        nodeCount++;
+        if ((nodeCount % NODES_BETWEEN_CLOCK_CHECKS) == 0 && System.nanoTime() > deadlineNanos)
+        {
+            timedOut = true;
+        }
+        if (timedOut)
+        {
+            return 0;
+        }
+
+        int moveCount = board.getMoveCount();
+        if (board.playableWinningCells(red) != 0)
+        {
+            return NegamaxSearch.WIN_SCORE - (moveCount + 1);
+        }
+        long candidates = board.nonLosingCells(red);
+        if (candidates == 0)
+        {
+            return -(NegamaxSearch.WIN_SCORE - (moveCount + 2)); // whatever I play, they win next
+        }
+        if (moveCount + 2 >= slotCount)
+        {
+            return 0; // I fill one of the last two slots and they cannot win with the other
+        }
+
+        int max = NegamaxSearch.WIN_SCORE - (moveCount + 3); // I cannot win before my next move
+        if (beta > max)
+        {
+            beta = max;
+            if (alpha >= beta)
+            {
+                return beta;
+            }
+        }
+
+        int ply = moveCount - rootMoveCount;
+        long hash = board.getCanonicalHash(red); // a position and its mirror image have the same bounds
+        int slot = ((int) (hash ^ (hash >>> 32)) & cacheMask) * 2;
+        long data = cache[slot + 1];
+        if (ply > 0 && data != 0 && (cache[slot] ^ data) == hash) // the root must search to name its best column
+        {
+            int cachedScore = (int) data;
+            if ((data >>> 32) == UPPER && cachedScore < beta)
+            {
+                beta = cachedScore;
+            }
+            else if ((data >>> 32) == LOWER && cachedScore > alpha)
+            {
+                alpha = cachedScore;
+            }
+            if (alpha >= beta)
+            {
+                return (data >>> 32) == UPPER ? beta : alpha;
+            }
+        }
+
+        int candidateCount = orderMoves(red, candidates, moveBuffers[ply], moveScores[ply]);
+        int originalAlpha = alpha;
+        int best = -NegamaxSearch.WIN_SCORE;
+        for (int i = 0; i < candidateCount; i++)
+        {
+            int column = moveBuffers[ply][i];
+            board.play(column, red);
+            int result = -negamax(!red, -beta, -alpha);
+            board.undo(column);
+            if (timedOut)
+            {
+                return 0;
+            }
+            if (result > best)
+            {
+                best = result;
+            }
+            if (result >= beta)
+            {
+                if (ply == 0)
+                {
+                    bestColumn = column; // proves the root score is at least beta
+                }
+                store(slot, hash, LOWER, result);
+                return result;
+            }
+            if (result > alpha)
+            {
+                alpha = result;
+            }
+        }
+        store(slot, hash, (best <= originalAlpha) ? UPPER : LOWER, best);
+        return best;
+    }
+
+    /**
+     * Fills a buffer with the columns of the candidate cells, those that leave the player the
+     * most winning cells first and, between equals, those nearest the center first.
+     *
+     * @return the number of columns in the buffer
+     */
+    private int orderMoves(boolean red, long candidates, int[] columns, int[] scores)
+    {
+        int count = 0;
+        for (int i = 0; i < columnOrder.length; i++)
+        {
+            int column = columnOrder[i];
+            if ((candidates & board.columnMask(column)) == 0)
+            {
+                continue;
+            }
+            board.play(column, red);
+            int threats = Long.bitCount(board.winningCells(red));
+            board.undo(column);
+
+            int j = count;
+            while (j > 0 && scores[j - 1] < threats) // stable, so center order breaks ties
+            {
+                columns[j] = columns[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            columns[j] = column;
+            scores[j] = threats;
+            count++;
+        }
+        return count;
+    }
+
+    private void store(int slot, long hash, int bound, int value)
+    {
+        long data = ((long) bound << 32) | (value & 0xFFFFFFFFL);
+        cache[slot] = hash ^ data;
+        cache[slot + 1] = data;
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * The weights of the Evaluator's terms. Weights are read from a properties file, for example
+ *
+ *     # an open window one token short of a line, such as three of four
+ *     window.short1 = 16
+ *     # an open window two tokens short of a line, such as two of four
+ *     window.short2 = 4
+ *     # every token, times the number of windows through its cell, so central cells count most
+ *     cell = 1
+ *     # a window one token short whose empty cell is on a row that favors its owner in the
+ *     # endgame (odd rows for Red, even rows for Yellow, counted from 1 at the bottom)
+ *     threat.goodParity = 24
+ *     # the same on a row that favors the opponent
+ *     threat.badParity = 8
+ *
+ * A window is any run of connect-length cells a line could be completed in, and is open while
+ * it holds tokens of only one player. Keys left out keep their DEFAULT values.
+ */
+public class EvaluationWeights
+{
+    public static final EvaluationWeights DEFAULT = new EvaluationWeights(16, 4, 1, 24, 8);
+
+    private final int shortOne;
+    private final int shortTwo;
+    private final int cell;
+    private final int goodParityThreat;
+    private final int badParityThreat;
+
+    /**
+     * Constructs a set of weights.
+     *
+     * @param shortOne each open window one token short of a line
+     * @param shortTwo each open window two tokens short of a line
+     * @param cell each token, times the number of windows through its cell
+     * @param goodParityThreat added to shortOne when the window's empty cell is on a row that
+     *        favors its owner
+     * @param badParityThreat added to shortOne when it is on a row that favors the opponent
+     */
+    public EvaluationWeights(int shortOne, int shortTwo, int cell, int goodParityThreat, int badParityThreat)
+    {
+        this.shortOne = shortOne;
+        this.shortTwo = shortTwo;
+        this.cell = cell;
+        this.goodParityThreat = goodParityThreat;
+        this.badParityThreat = badParityThreat;
+    }
+
+    /**
+     * Reads weights from a properties file.
+     *
+     * @param file the file to read
+     * @return the weights
+     * @throws UncheckedIOException if the file cannot be read
+     * @throws IllegalArgumentException if a weight is not a whole number
+     */
+    public static EvaluationWeights load(Path file)
+    {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file))
+        {
+            properties.load(reader);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        return new EvaluationWeights(
+            weight(properties, "window.short1", DEFAULT.shortOne),
+            weight(properties, "window.short2", DEFAULT.shortTwo),
+            weight(properties, "cell", DEFAULT.cell),
+            weight(properties, "threat.goodParity", DEFAULT.goodParityThreat),
+            weight(properties, "threat.badParity", DEFAULT.badParityThreat));
+    }
+
+    public int getShortOne()
+    {
+        return shortOne;
+    }
+
+    public int getShortTwo()
+    {
+        return shortTwo;
+    }
+
+    public int getCell()
+    {
+        return cell;
+    }
+
+    public int getGoodParityThreat()
+    {
+        return goodParityThreat;
+    }
+
+    public int getBadParityThreat()
+    {
+        return badParityThreat;
+    }
+
+    private static int weight(Properties properties, String key, int defaultWeight)
+    {
+        String value = properties.getProperty(key);
+        if (value == null)
+        {
+            return defaultWeight;
+        }
+        try
+        {
+            return Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("The weight " + key + " is not a whole number: " + value);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * A heuristic score for positions the search cannot see to the end of, kept up to date move by
+ * move instead of being worked out from the whole board at every leaf.
+ *
+ * The board is split into windows: every run of connect-length cells, in any of the four
+ * directions, that a line could be completed in. A window is open for a player while it holds
+ * only that player's tokens. The score adds, for each player, the weight of every open window
+ * two tokens short of a line and every open window one token short, the latter more or less
+ * depending on whether its empty cell is on a row that helps its owner in the endgame (see
+ * ThreatAnalyzer), plus a weight for each token that grows with the number of windows through
+ * its cell, which favors the center. Red's total minus Yellow's is the score.
+ *
+ * play() and undo() look only at the windows through the one cell that changed, so a move costs
+ * a few dozen additions however large the board is. Each window keeps the number of tokens of
+ * each player in it, packed into one int that indexes a table of what such a window is worth,
+ * and the sum of the indices of its filled cells; when one cell is left, that sum gives which
+ * one it is without looking at the board.
+ *
+ * The windows are the lines of WinLines, whose tables of the windows through each cell are
+ * built once per board size and shared by every evaluator; an evaluator only allocates its own
+ * counts.
+ *
+ * Scores are kept within MAX_SCORE, so they are never mistaken for a proven win or loss.
+ */
+public class Evaluator
+{
+    public static final int MAX_SCORE = NegamaxSearch.WIN_SCORE - 100;
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final int yellowToken; // what one Yellow token adds to a window's packed counts; a Red token adds 1
+    private final int[][] cellWindows; // the windows through each cell, by column * rowCount + row; shared
+    private final int[] cellWeights;
+    private final boolean[] oddRowCells; // the cells of rows 1, 3, 5, ... counted from 1 at the bottom; shared
+    private final int[] windowValues; // what a window adds to Red's score, by packed counts, before parity
+    private final int[] threatOwners; // 1 if a window one short is Red's, -1 if Yellow's, by packed counts
+    private final int goodParityThreat;
+    private final int badParityThreat;
+    private final int[] cellSums; // the sum of the indices of every cell of each window; shared
+    private final int[] counts; // the Red tokens of each window plus yellowToken times its Yellow tokens
+    private final int[] filledSums; // the sum of the indices of the filled cells of each window
+    private int score; // from Red's point of view
+
+    /**
+     * Constructs an evaluator for an empty board.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @param weights the weights of the terms of the score
+     */
+    public Evaluator(int columnCount, int rowCount, int connectLength, EvaluationWeights weights)
+    {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        this.yellowToken = connectLength + 1;
+        this.goodParityThreat = weights.getGoodParityThreat();
+        this.badParityThreat = weights.getBadParityThreat();
+
+        windowValues = new int[yellowToken * yellowToken];
+        threatOwners = new int[windowValues.length];
+        for (int red = 0; red <= connectLength; red++)
+        {
+            for (int yellow = 0; yellow <= connectLength - red; yellow++)
+            {
+                if ((red == 0) == (yellow == 0))
+                {
+                    continue; // empty, or blocked by both players
+                }
+                int owner = (red > 0) ? 1 : -1;
+                int missing = connectLength - red - yellow;
+                int packed = red + yellow * yellowToken;
+                if (missing == 1)
+                {
+                    windowValues[packed] = owner * weights.getShortOne();
+                    threatOwners[packed] = owner;
+                }
+                else if (missing == 2)
+                {
+                    windowValues[packed] = owner * weights.getShortTwo();
+                }
+                // windows further from a line do not count, and a finished line is scored by the search
+            }
+        }
+
+        WinLines lines = WinLines.forBoard(columnCount, rowCount, connectLength);
+        cellWindows = lines.cellLines();
+        cellSums = lines.lineCellSums();
+        oddRowCells = lines.oddRowCells();
+        cellWeights = new int[cellWindows.length];
+        for (int i = 0; i < cellWeights.length; i++)
+        {
+            cellWeights[i] = weights.getCell() * cellWindows[i].length;
+        }
+        counts = new int[lines.getLineCount()];
+        filledSums = new int[lines.getLineCount()];
+    }
+
+    /**
+     * Copies every token of a bitboard of the same size into the evaluator, replacing whatever
+     * it held before.
+     *
+     * @param board the board to copy
+     */
+    public void sync(Connect4Bitboard board)
+    {
+        java.util.Arrays.fill(counts, 0);
+        java.util.Arrays.fill(filledSums, 0);
+        score = 0;
+        long red = board.getMask(true);
+        long yellow = board.getMask(false);
+        for (int c = 0; c < columnCount; c++)
+        {
+            for (int row = 0; row < rowCount; row++)
+            {
+                long cell = board.cellBit(c, row);
+                if ((red & cell) != 0)
+                {
+                    play(c, row, true);
+                }
+                else if ((yellow & cell) != 0)
+                {
+                    play(c, row, false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a token to the score.
+     *
+     * @param column the column the token was dropped in
+     * @param row the row it landed on, counted from the bottom
+     * @param red true for a Red token, false for a Yellow one
+     */
+    public void play(int column, int row, boolean red)
+    {
+        int cell = column * rowCount + row;
+        int[] windows = cellWindows[cell];
+        int token = red ? 1 : yellowToken;
+        int delta = red ? cellWeights[cell] : -cellWeights[cell];
+        for (int i = 0; i < windows.length; i++)
+        {
+            int w = windows[i];
+            delta -= windowScore(w);
+            counts[w] += token;
+            filledSums[w] += cell;
+            delta += windowScore(w);
+        }
+        score += delta;
+    }
+
+    /**
+     * Takes a token back out of the score. It must be the last token added in its column.
+     *
+     * @param column the column the token is taken from
+     * @param row the row it was on, counted from the bottom
+     * @param red true for a Red token, false for a Yellow one
+     */
+    public void undo(int column, int row, boolean red)
+    {
+        int cell = column * rowCount + row;
+        int[] windows = cellWindows[cell];
+        int token = red ? 1 : yellowToken;
+        int delta = red ? -cellWeights[cell] : cellWeights[cell];
+        for (int i = 0; i < windows.length; i++)
+        {
+            int w = windows[i];
+            delta -= windowScore(w);
+            counts[w] -= token;
+            filledSums[w] -= cell;
+            delta += windowScore(w);
+        }
+        score += delta;
+    }
+
+    /**
+     * Returns the score of the position for a player.
+     *
+     * @param red true for Red's point of view, false for Yellow's
+     * @return the score, within MAX_SCORE either way
+     */
+    public int score(boolean red)
+    {
+        int clamped = Math.max(-MAX_SCORE, Math.min(MAX_SCORE, score));
+        return red ? clamped : -clamped;
+    }
+
+    /**
+     * Returns what one window adds to Red's score.
+     */
+    private int windowScore(int window)
+    {
+        int packed = counts[window];
+        int owner = threatOwners[packed];
+        if (owner == 0)
+        {
+            return windowValues[packed];
+        }
+        boolean oddRow = oddRowCells[cellSums[window] - filledSums[window]]; // the one empty cell
+        return windowValues[packed] + owner * ((oddRow == (owner > 0)) ? goodParityThreat : badParityThreat);
+    }
+}
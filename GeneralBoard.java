@@ -0,0 +1,390 @@
+import java.util.Random;
+
+/**
+ * A copy of a Connect4Game of any size, for a winning line of any length, kept as one byte per
+ * cell. It is the fallback for boards too large for a Connect4Bitboard, and answers the same
+ * questions more slowly: every check walks the lines through one cell instead of testing the
+ * whole board at once with a few shifts. Where the JVM offers the Vector API, finding a winning
+ * column is instead left to a WinDetector, which checks many columns at once (see
+ * setVectorDetection).
+ *
+ * Row numbers count up from the bottom of the board, as in Connect4Bitboard, and a position
+ * and its mirror image share getCanonicalHash() as they do there.
+ */
+public class GeneralBoard
+{
+    private static final byte EMPTY = 0;
+    private static final byte RED = 1;
+    private static final byte YELLOW = 2;
+
+    // the four directions a line can run in, as column and row steps
+    private static final int[] COLUMN_STEPS = {0, 1, 1, 1};
+    private static final int[] ROW_STEPS = {1, 0, 1, -1};
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final byte[] cells; // column * rowCount + row
+    private final int[] heights;
+    private final long[] redKeys;
+    private final long[] yellowKeys;
+    private final long yellowToMoveKey;
+    private int moveCount;
+    private long hash;
+    private long mirrorHash; // the hash of the board's mirror image
+    private WinDetector winDetector; // null when winning columns are found column by column
+
+    /**
+     * Constructs an empty board of the given size.
+     *
+     * @param columnCount the number of columns on the board
+     * @param rowCount the number of rows on the board
+     * @param connectLength the number of tokens in a row that wins
+     */
+    public GeneralBoard(int columnCount, int rowCount, int connectLength)
+    {
+        if (connectLength < 2)
+        {
+            throw new IllegalArgumentException("A line must be at least 2 tokens long, not " + connectLength);
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        this.cells = new byte[columnCount * rowCount];
+        this.heights = new int[columnCount];
+
+        Random random = new Random(0x47656E6572616CL ^ cells.length); // fixed, so boards of one size share hashes
+        redKeys = new long[cells.length];
+        yellowKeys = new long[cells.length];
+        for (int i = 0; i < cells.length; i++)
+        {
+            redKeys[i] = random.nextLong();
+            yellowKeys[i] = random.nextLong();
+        }
+        yellowToMoveKey = random.nextLong();
+        winDetector = WinDetector.load(columnCount, rowCount, connectLength);
+    }
+
+    /**
+     * Turns the vectorized search for winning columns on or off. It is on from the start when
+     * WinDetector.load() finds a detector, and cannot be turned on when it does not; the two
+     * always find the same columns.
+     *
+     * @param enabled true to use a WinDetector, false to check column by column
+     * @return whether a WinDetector is now in use
+     */
+    public boolean setVectorDetection(boolean enabled)
+    {
+        if (!enabled)
+        {
+            winDetector = null;
+        }
+        else if (winDetector == null)
+        {
+            winDetector = WinDetector.load(columnCount, rowCount, connectLength);
+            for (int c = 0; winDetector != null && c < columnCount; c++)
+            {
+                for (int row = 0; row < heights[c]; row++)
+                {
+                    winDetector.set(c, row, cells[c * rowCount + row] == RED);
+                }
+            }
+        }
+        return winDetector != null;
+    }
+
+    /**
+     * Copies every slot of the game into this board, replacing whatever it held before.
+     *
+     * @param game the game to copy; must have the same size as this board
+     */
+    public void sync(Connect4Game game)
+    {
+        java.util.Arrays.fill(cells, EMPTY);
+        moveCount = 0;
+        hash = 0L;
+        mirrorHash = 0L;
+        if (winDetector != null)
+        {
+            winDetector.reset();
+        }
+        for (int c = 0; c < columnCount; c++)
+        {
+            Connect4Column column = game.getColumn(c);
+            int height = 0;
+            for (int slotIndex = rowCount - 1; slotIndex >= 0; slotIndex--) // bottom slot first
+            {
+                Connect4Slot slot = column.getSlot(slotIndex);
+                if (!slot.getIsFilled())
+                {
+                    break;
+                }
+                set(c, height, slot.getIsRed());
+                height++;
+            }
+            heights[c] = height;
+            moveCount += height;
+        }
+    }
+
+    /**
+     * Drops a token into a column. The column must not be full.
+     *
+     * @param column the column to play in
+     * @param red true to drop a Red token, false to drop a Yellow token
+     */
+    public void play(int column, boolean red)
+    {
+        set(column, heights[column], red);
+        heights[column]++;
+        moveCount++;
+    }
+
+    /**
+     * Removes the top token of a column. The column must not be empty.
+     *
+     * @param column the column to take the token back from
+     */
+    public void undo(int column)
+    {
+        heights[column]--;
+        moveCount--;
+        int index = column * rowCount + heights[column];
+        int mirrorIndex = (columnCount - 1 - column) * rowCount + heights[column];
+        hash ^= (cells[index] == RED) ? redKeys[index] : yellowKeys[index];
+        mirrorHash ^= (cells[index] == RED) ? redKeys[mirrorIndex] : yellowKeys[mirrorIndex];
+        cells[index] = EMPTY;
+        if (winDetector != null)
+        {
+            winDetector.clear(column, heights[column]);
+        }
+    }
+
+    public boolean canPlay(int column)
+    {
+        return heights[column] < rowCount;
+    }
+
+    public int getHeight(int column)
+    {
+        return heights[column];
+    }
+
+    /**
+     * Returns the Connect4Column slot index of the top empty slot in a column.
+     *
+     * @param column the column to check
+     * @return the slot index of the top empty slot; -1 if the column is full
+     */
+    public int getLowestEmptyIndex(int column)
+    {
+        return rowCount - 1 - heights[column];
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getConnectLength()
+    {
+        return connectLength;
+    }
+
+    public int getMoveCount()
+    {
+        return moveCount;
+    }
+
+    public boolean isFull()
+    {
+        return moveCount == cells.length;
+    }
+
+    /**
+     * Returns the Zobrist hash of the position with the given player to move.
+     *
+     * @param redToMove true if Red is to move, false if Yellow is to move
+     */
+    public long getHash(boolean redToMove)
+    {
+        return redToMove ? hash : hash ^ yellowToMoveKey;
+    }
+
+    /**
+     * Returns the hash shared by the position and its mirror image. See
+     * Connect4Bitboard.getCanonicalHash.
+     *
+     * @param redToMove true if Red is to move, false if Yellow is to move
+     */
+    public long getCanonicalHash(boolean redToMove)
+    {
+        long mirrored = redToMove ? mirrorHash : mirrorHash ^ yellowToMoveKey;
+        return Math.min(getHash(redToMove), mirrored);
+    }
+
+    /**
+     * Returns the column a column becomes in the mirror image of the board.
+     *
+     * @param column the column to mirror
+     */
+    public int mirrorColumn(int column)
+    {
+        return columnCount - 1 - column;
+    }
+
+    /**
+     * Returns whether dropping a token in a column would win the game for a player.
+     *
+     * @param column the column to try
+     * @param red true for Red, false for Yellow
+     */
+    public boolean isWinningMove(int column, boolean red)
+    {
+        return canPlay(column) && completesLine(column, heights[column], red);
+    }
+
+    /**
+     * Returns the leftmost column in which a player can win on this move.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     * @return the winning column; -1 if the player has no immediate win
+     */
+    public int findWinningColumn(boolean red)
+    {
+        return findWinningColumn(red, 0);
+    }
+
+    /**
+     * Returns the leftmost column, from a given column on, in which a player can win on this
+     * move.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     * @param fromColumn the first column to check
+     * @return the winning column; -1 if the player has no immediate win from fromColumn on
+     */
+    public int findWinningColumn(boolean red, int fromColumn)
+    {
+        if (winDetector != null)
+        {
+            return winDetector.findWinningColumn(red, fromColumn);
+        }
+        for (int c = fromColumn; c < columnCount; c++)
+        {
+            if (isWinningMove(c, red))
+            {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether dropping a token in a column would let a player win by dropping the next
+     * token on top of it.
+     *
+     * @param column the column that is about to be played
+     * @param red true to check whether Red would be handed the win, false for Yellow
+     */
+    public boolean offersWinAbove(int column, boolean red)
+    {
+        return heights[column] + 1 < rowCount && completesLine(column, heights[column] + 1, red);
+    }
+
+    /**
+     * Returns a random column that does not let the opponent win on top of it. If every
+     * column does, the game is lost anyway, and a random column that is not full is returned.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param random the source of randomness
+     * @return the column to play; -1 if the board is full
+     */
+    public int pickSafeColumn(boolean red, Random random)
+    {
+        int safe = 0;
+        int playable = 0;
+        for (int c = 0; c < columnCount; c++)
+        {
+            if (canPlay(c))
+            {
+                playable++;
+                if (!offersWinAbove(c, !red))
+                {
+                    safe++;
+                }
+            }
+        }
+        if (playable == 0)
+        {
+            return -1;
+        }
+        boolean safeOnly = (safe > 0);
+        int pick = random.nextInt(safeOnly ? safe : playable);
+        for (int c = 0; c < columnCount; c++)
+        {
+            if (canPlay(c) && !(safeOnly && offersWinAbove(c, !red)) && pick-- == 0)
+            {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a token of a player in an empty cell would complete a winning line.
+     *
+     * @param column the cell's column
+     * @param row the cell's row, counted from the bottom
+     * @param red true for Red, false for Yellow
+     */
+    public boolean completesLine(int column, int row, boolean red)
+    {
+        byte color = red ? RED : YELLOW;
+        for (int d = 0; d < COLUMN_STEPS.length; d++)
+        {
+            int run = 1 + countRun(column, row, COLUMN_STEPS[d], ROW_STEPS[d], color)
+                + countRun(column, row, -COLUMN_STEPS[d], -ROW_STEPS[d], color);
+            if (run >= connectLength)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the tokens of one color in a row from a cell, not counting the cell itself.
+     */
+    private int countRun(int column, int row, int columnStep, int rowStep, byte color)
+    {
+        int count = 0;
+        int c = column + columnStep;
+        int r = row + rowStep;
+        while (count < connectLength - 1 && c >= 0 && c < columnCount && r >= 0 && r < rowCount
+            && cells[c * rowCount + r] == color)
+        {
+            count++;
+            c += columnStep;
+            r += rowStep;
+        }
+        return count;
+    }
+
+    private void set(int column, int row, boolean red)
+    {
+        int index = column * rowCount + row;
+        int mirrorIndex = (columnCount - 1 - column) * rowCount + row;
+        cells[index] = red ? RED : YELLOW;
+        hash ^= red ? redKeys[index] : yellowKeys[index];
+        mirrorHash ^= red ? redKeys[mirrorIndex] : yellowKeys[mirrorIndex];
+        if (winDetector != null)
+        {
+            winDetector.set(column, row, red);
+        }
+    }
+}
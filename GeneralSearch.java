@@ -0,0 +1,257 @@
+/**
+ * The negamax search of NegamaxSearch, over a GeneralBoard, for boards too large for a
+ * bitboard.
+ *
+ * Scores, deepening, deadlines and the use of the TranspositionTable all work as in
+ * NegamaxSearch; only the board checks differ, column by column instead of mask by mask.
+ */
+public class GeneralSearch
+{
+    private static final int NODES_BETWEEN_CLOCK_CHECKS = 1024;
+
+    private final GeneralBoard board;
+    private final TranspositionTable table;
+    private final int[] columnOrder;
+    private final int slotCount;
+
+    private boolean agesTable = true;
+    private long deadlineNanos;
+    private boolean timedOut;
+    private long nodeCount;
+    private int rootMoveCount;
+    private int rootBestColumn;
+    private int completedDepth;
+    private int bestScore;
+
+    /**
+     * Constructs a search over the given board. The search plays and takes back moves on the
+     * board while it runs and leaves it as it found it.
+     *
+     * @param board the board to search
+     * @param table the table to keep search results in
+     */
+    public GeneralSearch(GeneralBoard board, TranspositionTable table)
+    {
+        if (board.getColumnCount() * board.getRowCount() >= NegamaxSearch.WIN_SCORE)
+        {
+            throw new IllegalArgumentException("A board of " + board.getColumnCount() * board.getRowCount()
+                + " slots is too large for the search's scores");
+        }
+        this.board = board;
+        this.table = table;
+        this.columnOrder = NegamaxSearch.centerFirstOrder(board.getColumnCount());
+        this.slotCount = board.getColumnCount() * board.getRowCount();
+    }
+
+    /**
+     * Searches the current position and returns the best column for the player to move.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param maxDepth the most moves to look ahead
+     * @param deadlineNanos the System.nanoTime() by which the search must return; once it passes
+     *        the best column of the deepest finished search is returned
+     * @return the best column found; -1 if the board is full
+     */
+    public int findBestColumn(boolean red, int maxDepth, long deadlineNanos)
+    {
+        this.deadlineNanos = deadlineNanos;
+        timedOut = false;
+        nodeCount = 0;
+        completedDepth = 0;
+        bestScore = 0;
+
+        int forcedColumn = board.findWinningColumn(red);
+        if (forcedColumn == -1)
+        {
+            forcedColumn = board.findWinningColumn(!red);
+        }
+        if (forcedColumn != -1)
+        {
+            return forcedColumn;
+        }
+
+        if (agesTable)
+        {
+            table.newSearch();
+        }
+        rootMoveCount = board.getMoveCount();
+        rootBestColumn = -1;
+        for (int i = 0; i < columnOrder.length && rootBestColumn == -1; i++)
+        {
+            if (board.canPlay(columnOrder[i]))
+            {
+                rootBestColumn = columnOrder[i];
+            }
+        }
+
+        int depthLimit = Math.min(maxDepth, slotCount - rootMoveCount);
+        for (int depth = 1; depth <= depthLimit; depth++)
+        {
+            int score = negamax(red, depth, -NegamaxSearch.WIN_SCORE, NegamaxSearch.WIN_SCORE);
+            if (timedOut)
+            {
+                break;
+            }
+            completedDepth = depth;
+            bestScore = score;
+            if (isProven(score))
+            {
+                break;
+            }
+        }
+        return rootBestColumn;
+    }
+
+    /**
+     * Returns whether a score is a forced win or loss rather than an estimate.
+     *
+     * @param score a score returned by the search
+     */
+    public boolean isProven(int score)
+    {
+        return Math.abs(score) > NegamaxSearch.WIN_SCORE - slotCount - 1;
+    }
+
+    /**
+     * Sets whether each search starts a new generation of the transposition table. See
+     * NegamaxSearch.setAgesTable.
+     *
+     * @param agesTable true to start a new generation with every search
+     */
+    public void setAgesTable(boolean agesTable)
+    {
+        this.agesTable = agesTable;
+    }
+
+    /**
+     * Returns the deepest search depth the last search finished.
+     */
+    public int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the score of the position found by the deepest finished search.
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Returns the number of positions visited by the last search.
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    private int negamax(boolean red, int depth, int alpha, int beta)
+    {
+        nodeCount++;
+        if ((nodeCount % NODES_BETWEEN_CLOCK_CHECKS) == 0 && System.nanoTime() > deadlineNanos)
+        {
+            timedOut = true;
+        }
+        if (timedOut)
+        {
+            return 0;
+        }
+
+        int moveCount = board.getMoveCount();
+        if (board.findWinningColumn(red) != -1) // I can win
+        {
+            return NegamaxSearch.WIN_SCORE - (moveCount + 1);
+        }
+        int blockColumn = board.findWinningColumn(!red);
+        if (blockColumn != -1 && board.findWinningColumn(!red, blockColumn + 1) != -1)
+        {
+            return -(NegamaxSearch.WIN_SCORE - (moveCount + 2)); // they can win in two places and I can only block one
+        }
+        if (board.isFull() || depth <= 0)
+        {
+            return 0;
+        }
+
+        long hash = board.getCanonicalHash(red);
+        boolean mirrored = (hash != board.getHash(red)); // the entry's column is the mirror image's
+        int tableMove = TranspositionTable.NO_MOVE;
+        long entry = table.probe(hash);
+        if (moveCount == rootMoveCount)
+        {
+            tableMove = rootBestColumn; // the best column of the last depth goes first
+        }
+        else if (entry != 0)
+        {
+            tableMove = TranspositionTable.moveOf(entry);
+            if (mirrored && tableMove >= 0)
+            {
+                tableMove = board.mirrorColumn(tableMove);
+            }
+            if (TranspositionTable.depthOf(entry) >= depth)
+            {
+                int score = TranspositionTable.scoreOf(entry);
+                int bound = TranspositionTable.boundOf(entry);
+                if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha))
+                {
+                    return score;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int nodeBestScore = -NegamaxSearch.WIN_SCORE;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = -1; i < columnOrder.length; i++)
+        {
+            int column = (i < 0) ? tableMove : columnOrder[i]; // the table's best move goes first
+            if (column < 0 || column >= columnOrder.length || (i >= 0 && column == tableMove) || !board.canPlay(column))
+            {
+                continue;
+            }
+            if (blockColumn != -1 && column != blockColumn)
+            {
+                continue; // they can win, so blocking is the only move worth looking at
+            }
+            board.play(column, red);
+            int score = -negamax(!red, depth - 1, -beta, -alpha);
+            board.undo(column);
+            if (timedOut)
+            {
+                return 0;
+            }
+            if (score > nodeBestScore)
+            {
+                nodeBestScore = score;
+                bestMove = column;
+                if (moveCount == rootMoveCount)
+                {
+                    rootBestColumn = column;
+                }
+            }
+            if (score > alpha)
+            {
+                alpha = score;
+            }
+            if (alpha >= beta)
+            {
+                break;
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (nodeBestScore <= originalAlpha)
+        {
+            bound = TranspositionTable.UPPER_BOUND;
+        }
+        else if (nodeBestScore >= beta)
+        {
+            bound = TranspositionTable.LOWER_BOUND;
+        }
+        table.store(hash, depth, bound, nodeBestScore, (mirrored && bestMove >= 0) ? board.mirrorColumn(bestMove) : bestMove);
+        return nodeBestScore;
+    }
+}
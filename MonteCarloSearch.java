@@ -0,0 +1,637 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Chooses moves by Monte Carlo tree search. A tree of the positions reachable from the current
+ * one grows by one node per iteration: each iteration walks down the tree, at every node taking
+ * the child with the best upper confidence bound (UCT), adds the children of the node it ends
+ * on, and scores the new position by playing the game out to the end with fast, nearly random
+ * moves. The column whose subtree was visited most is played.
+ *
+ * The playouts and the tree's children follow the same few rules: a player who can win does,
+ * one who must block does, and otherwise a player picks at random among the cells that do not
+ * let the opponent win on top of them. Both are worked out on a Connect4Bitboard with a handful
+ * of shifts, so a whole playout takes about a microsecond.
+ *
+ * Nodes are kept in arrays allocated once, up front, and a search allocates nothing. When a
+ * search starts from a position the tree already holds, such as the position two moves after
+ * the last search's, the subtree under it is kept: it is copied to the front of a second set
+ * of arrays, and the first set becomes the spare for next time. Once the arrays are full the
+ * tree stops growing and iterations only play out from its leaves.
+ *
+ * With more than one thread every thread grows a tree of its own from the same position, and
+ * the visits of their root children are added up ("root parallelization"). As in
+ * ParallelSearch, the helper threads are started once and parked between searches. With one
+ * thread and an iteration budget a search is repeatable from run to run.
+ */
+public class MonteCarloSearch
+{
+    public static final int DEFAULT_NODES_PER_THREAD = 1 << 20; // about 34 MB a thread, two sets of arrays included
+    public static final double EXPLORATION = 1.0; // the weight of UCT's exploration term, for scores from 0 to 1
+
+    private static final int ITERATIONS_BETWEEN_CLOCK_CHECKS = 64;
+    private static final int MAX_VISITS = 1 << 30; // keeps a node's score, two points a win, within an int
+
+    // what the move into a node did
+    private static final byte OPEN = 0;
+    private static final byte WON = 1;
+    private static final byte DRAWN = 2;
+
+    private final Tree[] trees; // trees[0] is grown by the calling thread
+    private final Helper[] helpers;
+    private final int[] columnOrder;
+    private final long[] columnVisits;
+    private final long[] columnScores;
+
+    private volatile Thread caller; // the thread waiting for the helpers to finish
+    private volatile boolean shutdown;
+    private int round;
+
+    // what the helpers search; written by the caller before it bumps their requestedRound
+    private Connect4Bitboard position;
+    private boolean red;
+    private long iterationsPerTree;
+    private long deadlineNanos;
+
+    private double bestScore;
+
+    /**
+     * Constructs a search for boards of one size, allocating every tree's nodes and starting
+     * the helper threads, parked until the first search.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @param nodesPerThread the most nodes each thread's tree may hold
+     * @param threadCount the total number of searching threads, including the calling thread
+     * @param seed seeds the playouts, so that a search can be repeated
+     */
+    public MonteCarloSearch(int columnCount, int rowCount, int connectLength, int nodesPerThread, int threadCount, long seed)
+    {
+        columnOrder = NegamaxSearch.centerFirstOrder(columnCount);
+        columnVisits = new long[columnCount];
+        columnScores = new long[columnCount];
+        trees = new Tree[Math.max(1, threadCount)];
+        for (int i = 0; i < trees.length; i++)
+        {
+            trees[i] = new Tree(columnCount, rowCount, connectLength, nodesPerThread, columnOrder, seed + i);
+        }
+        helpers = new Helper[trees.length - 1];
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i] = new Helper(trees[i + 1]);
+            helpers[i].thread = new Thread(helpers[i], "MyAgent Monte Carlo helper " + (i + 1));
+            helpers[i].thread.setDaemon(true);
+            helpers[i].thread.start();
+        }
+    }
+
+    /**
+     * Searches a position and returns the column whose subtree was visited most. The search
+     * stops after the given number of iterations over all threads or at the deadline,
+     * whichever comes first.
+     *
+     * @param position the position to search; it is only read, and must not change until the
+     *        search returns
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param iterations the most iterations to run; Long.MAX_VALUE to stop at the deadline only
+     * @param deadlineNanos the System.nanoTime() by which the search must return;
+     *        Long.MAX_VALUE to stop after the iterations only
+     * @return the best column found; -1 if the board is full
+     */
+    public int findBestColumn(Connect4Bitboard position, boolean red, long iterations, long deadlineNanos)
+    {
+        this.position = position;
+        this.red = red;
+        this.iterationsPerTree = iterations / trees.length + ((iterations % trees.length != 0) ? 1 : 0);
+        this.deadlineNanos = deadlineNanos;
+        caller = Thread.currentThread();
+        round++;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i].requestedRound = round; // volatile write publishes the fields above
+            LockSupport.unpark(helpers[i].thread);
+        }
+
+        trees[0].search(position, red, iterationsPerTree, deadlineNanos);
+
+        for (int i = 0; i < helpers.length; i++)
+        {
+            while (helpers[i].finishedRound != round && !shutdown)
+            {
+                LockSupport.park(this);
+            }
+        }
+        return pickBestColumn();
+    }
+
+    /**
+     * Returns the share of the points the best column scored in the last search, from 0 for a
+     * column that lost every playout to 1 for one that won every playout, with a draw worth
+     * half a win.
+     */
+    public double getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Returns the number of iterations, one playout each, run by every thread in the last
+     * search.
+     */
+    public long getIterations()
+    {
+        long iterations = 0;
+        for (int i = 0; i < trees.length; i++)
+        {
+            iterations += trees[i].iterations;
+        }
+        return iterations;
+    }
+
+    /**
+     * Returns the most moves below the root any thread's tree reached in the last search.
+     */
+    public int getTreeDepth()
+    {
+        int depth = 0;
+        for (int i = 0; i < trees.length; i++)
+        {
+            depth = Math.max(depth, trees[i].treeDepth);
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of nodes in the calling thread's tree, counting those kept from
+     * earlier searches.
+     */
+    public int getTreeSize()
+    {
+        return trees[0].nodes.size;
+    }
+
+    /**
+     * Returns the total number of searching threads, including the calling thread.
+     */
+    public int getThreadCount()
+    {
+        return trees.length;
+    }
+
+    /**
+     * Stops the helper threads. The search must not be used afterwards.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            LockSupport.unpark(helpers[i].thread);
+        }
+    }
+
+    /**
+     * Adds up the visits of every tree's root children by column and picks the most visited
+     * one, the most central on a tie.
+     */
+    private int pickBestColumn()
+    {
+        java.util.Arrays.fill(columnVisits, -1L); // -1 for a column no tree has as a child
+        java.util.Arrays.fill(columnScores, 0L);
+        for (int t = 0; t < trees.length; t++)
+        {
+            NodePool nodes = trees[t].nodes;
+            int root = trees[t].root;
+            int first = nodes.firstChild[root];
+            for (int i = 0; first != -1 && i < nodes.childCount[root]; i++)
+            {
+                int column = nodes.column[first + i];
+                columnVisits[column] = Math.max(columnVisits[column], 0L) + nodes.visits[first + i];
+                columnScores[column] += nodes.scores[first + i];
+            }
+        }
+        int bestColumn = -1;
+        for (int i = 0; i < columnOrder.length; i++)
+        {
+            int column = columnOrder[i];
+            if (columnVisits[column] >= 0 && (bestColumn == -1 || columnVisits[column] > columnVisits[bestColumn]))
+            {
+                bestColumn = column;
+            }
+        }
+        bestScore = (bestColumn != -1 && columnVisits[bestColumn] > 0)
+            ? columnScores[bestColumn] / (2.0 * columnVisits[bestColumn]) : 0.5;
+        return bestColumn;
+    }
+
+    /**
+     * The nodes of one tree, by index. A node's children are kept next to one another, from
+     * firstChild on, in center-first order.
+     */
+    private static final class NodePool
+    {
+        final int[] visits;
+        final int[] scores; // points of the player who made the move into the node: 2 a win, 1 a draw
+        final int[] firstChild; // -1 until the node is expanded
+        final byte[] childCount;
+        final byte[] column; // the column played to reach the node; -1 for a root
+        final byte[] state; // OPEN, WON or DRAWN
+        int size;
+
+        NodePool(int capacity)
+        {
+            visits = new int[capacity];
+            scores = new int[capacity];
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            column = new byte[capacity];
+            state = new byte[capacity];
+        }
+
+        boolean hasRoom(int count)
+        {
+            return size + count <= visits.length;
+        }
+
+        int add(int move, byte moveState)
+        {
+            int node = size++;
+            visits[node] = 0;
+            scores[node] = 0;
+            firstChild[node] = -1;
+            childCount[node] = 0;
+            column[node] = (byte) move;
+            state[node] = moveState;
+            return node;
+        }
+
+        void copy(int node, NodePool to, int toNode)
+        {
+            to.visits[toNode] = visits[node];
+            to.scores[toNode] = scores[node];
+            to.childCount[toNode] = childCount[node];
+            to.column[toNode] = column[node];
+            to.state[toNode] = state[node];
+        }
+    }
+
+    /**
+     * One thread's tree, with the boards it plays its iterations on.
+     */
+    private static final class Tree
+    {
+        private final Connect4Bitboard board; // the position of the current iteration
+        private final Connect4Bitboard rootBoard; // the position at the root
+        private final int[] columnOrder;
+        private final int cellCount;
+        private final int[] path; // the nodes the current iteration went through, root first
+        private final int[] oldIndex; // while the tree is being kept, each copied node's index in the old pool
+        private NodePool nodes;
+        private NodePool spare;
+        private int root;
+        private boolean rootRed;
+        private boolean hasRoot;
+        private long random;
+
+        long iterations;
+        int treeDepth;
+
+        Tree(int columnCount, int rowCount, int connectLength, int capacity, int[] columnOrder, long seed)
+        {
+            board = new Connect4Bitboard(columnCount, rowCount, connectLength);
+            rootBoard = new Connect4Bitboard(columnCount, rowCount, connectLength);
+            this.columnOrder = columnOrder;
+            cellCount = columnCount * rowCount;
+            path = new int[cellCount + 2];
+            oldIndex = new int[capacity];
+            nodes = new NodePool(capacity);
+            spare = new NodePool(capacity);
+            root = nodes.add(-1, OPEN);
+            random = seed * 0x9E3779B97F4A7C15L + 1; // never 0, which xorshift would keep returning
+        }
+
+        /**
+         * Throws the tree away, leaving a root with no children.
+         */
+        void clear()
+        {
+            nodes.size = 0;
+            root = nodes.add(-1, OPEN);
+            hasRoot = false;
+            iterations = 0;
+        }
+
+        /**
+         * Grows the tree from a position until the iterations or the time run out.
+         */
+        void search(Connect4Bitboard position, boolean red, long maxIterations, long deadlineNanos)
+        {
+            moveRootTo(position, red);
+            iterations = 0;
+            treeDepth = 0;
+            while (iterations < maxIterations && nodes.visits[root] < MAX_VISITS)
+            {
+                if ((iterations % ITERATIONS_BETWEEN_CLOCK_CHECKS) == 0 && System.nanoTime() > deadlineNanos)
+                {
+                    break;
+                }
+                iterate();
+                iterations++;
+            }
+        }
+
+        /**
+         * Makes the root the node of a position, keeping its subtree if the tree holds it and
+         * starting a new tree if not. The root is always expanded, so that even a search with
+         * no time left has its children to choose from.
+         */
+        private void moveRootTo(Connect4Bitboard position, boolean red)
+        {
+            int node = hasRoot ? find(position, red) : -1;
+            if (node == -1)
+            {
+                nodes.size = 0;
+                root = nodes.add(-1, OPEN);
+            }
+            else if (node != root)
+            {
+                keepSubtree(node);
+            }
+            rootBoard.copyFrom(position);
+            rootRed = red;
+            hasRoot = true;
+            if (nodes.firstChild[root] == -1)
+            {
+                board.copyFrom(rootBoard);
+                expand(root, red);
+            }
+        }
+
+        /**
+         * Returns the node of a position that lies below the root, following the tokens the
+         * position has that the root's does not; -1 if the tree does not reach it.
+         */
+        private int find(Connect4Bitboard position, boolean red)
+        {
+            board.copyFrom(rootBoard);
+            boolean toMove = rootRed;
+            int node = root;
+            while (board.getMoveCount() < position.getMoveCount())
+            {
+                int first = nodes.firstChild[node];
+                int next = -1;
+                for (int i = 0; first != -1 && i < nodes.childCount[node] && next == -1; i++)
+                {
+                    int column = nodes.column[first + i];
+                    if ((position.getMask(toMove) & board.cellBit(column, board.getHeight(column))) != 0)
+                    {
+                        next = first + i;
+                    }
+                }
+                if (next == -1)
+                {
+                    return -1;
+                }
+                board.play(nodes.column[next], toMove);
+                toMove = !toMove;
+                node = next;
+            }
+            boolean same = toMove == red
+                && board.getMask(true) == position.getMask(true)
+                && board.getMask(false) == position.getMask(false);
+            return same ? node : -1;
+        }
+
+        /**
+         * Copies a node and everything below it to the front of the spare pool, breadth first
+         * so that every node's children stay next to one another, and makes it the root.
+         */
+        private void keepSubtree(int node)
+        {
+            NodePool from = nodes;
+            NodePool to = spare;
+            to.size = 1;
+            from.copy(node, to, 0);
+            oldIndex[0] = node;
+            for (int i = 0; i < to.size; i++)
+            {
+                int old = oldIndex[i];
+                int first = from.firstChild[old];
+                if (first == -1)
+                {
+                    to.firstChild[i] = -1;
+                    continue;
+                }
+                to.firstChild[i] = to.size;
+                for (int k = 0; k < from.childCount[old]; k++)
+                {
+                    oldIndex[to.size] = first + k;
+                    from.copy(first + k, to, to.size);
+                    to.size++;
+                }
+            }
+            to.column[0] = -1;
+            spare = from;
+            nodes = to;
+            root = 0;
+        }
+
+        /**
+         * Runs one iteration: down the tree, one new node, a playout, and its result back up
+         * through every node it went through.
+         */
+        private void iterate()
+        {
+            NodePool n = nodes;
+            board.copyFrom(rootBoard);
+            boolean toMove = rootRed;
+            int node = root;
+            int depth = 0;
+            path[depth++] = node;
+            while (n.state[node] == OPEN && n.firstChild[node] != -1)
+            {
+                node = select(node);
+                board.play(n.column[node], toMove);
+                toMove = !toMove;
+                path[depth++] = node;
+            }
+            if (n.state[node] == OPEN && n.visits[node] > 0 && expand(node, toMove))
+            {
+                node = select(node); // its first child, the most central
+                board.play(n.column[node], toMove);
+                toMove = !toMove;
+                path[depth++] = node;
+            }
+            treeDepth = Math.max(treeDepth, depth - 1);
+
+            int redResult; // 1 if Red won, -1 if Yellow won, 0 for a draw
+            if (n.state[node] == WON)
+            {
+                redResult = toMove ? -1 : 1; // the player who just moved won
+            }
+            else if (n.state[node] == DRAWN)
+            {
+                redResult = 0;
+            }
+            else
+            {
+                redResult = playOut(toMove);
+            }
+
+            for (int i = 0; i < depth; i++)
+            {
+                boolean moverRed = ((i % 2) == 0) != rootRed; // the root's mover is the player not to move
+                n.visits[path[i]]++;
+                n.scores[path[i]] += moverRed ? redResult + 1 : 1 - redResult;
+            }
+        }
+
+        /**
+         * Returns the child of a node with the best upper confidence bound; a child that was
+         * never visited comes first.
+         */
+        private int select(int node)
+        {
+            NodePool n = nodes;
+            int first = n.firstChild[node];
+            int count = n.childCount[node];
+            double logVisits = 0;
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < first + count; child++)
+            {
+                int visits = n.visits[child];
+                if (visits == 0)
+                {
+                    return child;
+                }
+                if (logVisits == 0)
+                {
+                    logVisits = Math.log(n.visits[node]);
+                }
+                double value = n.scores[child] / (2.0 * visits) + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (value > bestValue)
+                {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds the children of the node of the position on the board: only the winning move
+         * if there is one, only the block if the opponent threatens to win, and otherwise every
+         * move that does not hand the opponent a win (every move, if they all do).
+         *
+         * @return false if the node has no moves or the pool has no room for its children
+         */
+        private boolean expand(int node, boolean toMove)
+        {
+            long wins = board.playableWinningCells(toMove);
+            long cells = (wins != 0) ? wins & -wins : board.nonLosingCells(toMove);
+            if (cells == 0)
+            {
+                cells = board.getPlayableMask(); // every move loses; they are all the same
+            }
+            int count = Long.bitCount(cells);
+            if (count == 0 || !nodes.hasRoom(count))
+            {
+                return false;
+            }
+            byte open = (board.getMoveCount() + 1 == cellCount) ? DRAWN : OPEN;
+            nodes.firstChild[node] = nodes.size;
+            nodes.childCount[node] = (byte) count;
+            for (int i = 0; i < columnOrder.length; i++)
+            {
+                int column = columnOrder[i];
+                long cell = cells & board.columnMask(column);
+                if (cell != 0)
+                {
+                    nodes.add(column, ((wins & cell) != 0) ? WON : open);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Plays the position on the board out to the end with the playout rules.
+         *
+         * @return 1 if Red won, -1 if Yellow won, 0 for a draw
+         */
+        private int playOut(boolean toMove)
+        {
+            while (!board.isFull())
+            {
+                if (board.playableWinningCells(toMove) != 0)
+                {
+                    return toMove ? 1 : -1;
+                }
+                long cells = board.nonLosingCells(toMove);
+                if (cells == 0)
+                {
+                    return toMove ? -1 : 1; // every move hands the opponent a win
+                }
+                board.play(board.columnOf(randomCell(cells)), toMove);
+                toMove = !toMove;
+            }
+            return 0;
+        }
+
+        /**
+         * Returns one of the cells of a mask, picked at random.
+         */
+        private long randomCell(long cells)
+        {
+            random ^= random << 13; // xorshift
+            random ^= random >>> 7;
+            random ^= random << 17;
+            int pick = (int) (((random >>> 32) * Long.bitCount(cells)) >>> 32);
+            for (int i = 0; i < pick; i++)
+            {
+                cells &= cells - 1;
+            }
+            return cells & -cells;
+        }
+    }
+
+    /**
+     * One helper thread, growing its own tree, waiting for rounds to search.
+     */
+    private final class Helper implements Runnable
+    {
+        final Tree tree;
+        Thread thread;
+
+        volatile int requestedRound;
+        volatile int finishedRound;
+
+        Helper(Tree tree)
+        {
+            this.tree = tree;
+        }
+
+        public void run()
+        {
+            while (!shutdown)
+            {
+                int requested = requestedRound;
+                if (requested == finishedRound)
+                {
+                    LockSupport.park(this);
+                    continue;
+                }
+                try
+                {
+                    tree.search(position, red, iterationsPerTree, deadlineNanos);
+                }
+                catch (RuntimeException e)
+                {
+                    tree.clear(); // a helper that failed only cost us its share of the playouts
+                }
+                finishedRound = requested;
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+}
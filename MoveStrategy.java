@@ -0,0 +1,74 @@
+/**
+ * One way of choosing a MyAgent's move. A strategy either plays a column, recording why with
+ * MyAgent.decide(), or passes, leaving the choice to the next strategy of a chain; an agent
+ * whose whole strategy passes plays a random safe column.
+ *
+ * The constants below are the steps MyAgent has always taken, each of which passes when it has
+ * nothing to play: the book passes on positions it does not hold, the endgame solver until few
+ * slots are left, the search when its depth is 0. chain() puts them together in any order, or
+ * with strategies of your own. A strategy holds no state of its own and works on the agent it
+ * is given, so one strategy can serve any number of agents at once.
+ */
+public interface MoveStrategy
+{
+    /**
+     * Returned by a strategy that leaves the choice to the next one.
+     */
+    int PASS = -1;
+
+    MoveStrategy WIN = MyAgent::playWin;                 // a column that wins at once
+    MoveStrategy BLOCK = MyAgent::playBlock;             // the column the opponent would win in next
+    MoveStrategy BOOK = MyAgent::playBook;               // the opening book's column
+    MoveStrategy STORED = MyAgent::playStored;           // a column proven in an earlier game
+    MoveStrategy ENDGAME = MyAgent::playEndgame;         // the endgame solver's column
+    MoveStrategy MONTE_CARLO = MyAgent::playMonteCarlo;  // see MyAgent.setMonteCarlo()
+    MoveStrategy SEARCH = MyAgent::playSearch;           // the alpha-beta search's column
+    MoveStrategy SAFE = MyAgent::playSafe;               // a random column that does not hand over a win; never passes
+
+    /**
+     * Every step, in the order MyAgent takes them unless told otherwise.
+     */
+    MoveStrategy DEFAULT = chain(WIN, BLOCK, BOOK, STORED, ENDGAME, MONTE_CARLO, SEARCH, SAFE);
+
+    /**
+     * The course's original agent: win, block, or a random safe column. It needs no search, so
+     * it is the cheapest strategy to play many games with.
+     */
+    MoveStrategy HEURISTIC = chain(WIN, BLOCK, SAFE);
+
+    /**
+     * Chooses a column for an agent in the position on its board, without placing a token.
+     *
+     * @param agent the agent to choose for
+     * @param deadlineNanos the System.nanoTime() by which the choice must be made
+     * @return the column to play, recorded with agent.decide(); PASS to leave the choice to
+     *         the next strategy
+     */
+    int chooseColumn(MyAgent agent, long deadlineNanos);
+
+    /**
+     * Returns a strategy that asks each of the given strategies in turn and plays the column
+     * of the first that does not pass.
+     *
+     * @param strategies the strategies to ask, first to last
+     */
+    static MoveStrategy chain(MoveStrategy... strategies)
+    {
+        MoveStrategy[] steps = strategies.clone();
+        return new MoveStrategy()
+        {
+            public int chooseColumn(MyAgent agent, long deadlineNanos)
+            {
+                for (int i = 0; i < steps.length; i++)
+                {
+                    int column = steps[i].chooseColumn(agent, deadlineNanos);
+                    if (column != PASS)
+                    {
+                        return column;
+                    }
+                }
+                return PASS;
+            }
+        };
+    }
+}
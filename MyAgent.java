@@ -2,7 +2,40 @@ import java.util.Random;
 
 public class MyAgent extends Agent
 {
+    public static final int DEFAULT_SEARCH_DEPTH = 64; // deeper than any game can last, so time is the limit
+    public static final long DEFAULT_MOVE_TIME_MILLIS = 1000;
+    public static final long DEFAULT_TABLE_BYTES = 8L * 1024 * 1024;
+    public static final int DEFAULT_ENDGAME_EMPTY_SLOTS = 16;
+    public static final int DEFAULT_CONNECT_LENGTH = 4;
+
     Random r;
+    int rowCount;
+    int connectLength;
+    WinLines lines; // the board's geometry, shared by every agent of its size
+    Connect4Bitboard board; // null if the board is too large for a bitboard
+    GeneralBoard generalBoard; // used instead of board, and null when board is not
+    GeneralSearch generalSearch;
+    TranspositionTable table;
+    AgentFactory factory; // starts the generations of a table shared with other games; null unless made by one
+    NegamaxSearch search;
+    EndgameSolver endgameSolver; // made the first time the endgame is reached
+    long endgameCacheBytes = EndgameSolver.DEFAULT_CACHE_BYTES;
+    ThreatAnalyzer threats;
+    int endgameEmptySlots = DEFAULT_ENDGAME_EMPTY_SLOTS;
+    ParallelSearch parallelSearch; // null while the agent searches on the calling thread only
+    Ponderer ponderer; // null while the agent does not ponder
+    MonteCarloSearch monteCarlo; // null while the agent looks ahead with the alpha-beta search
+    long monteCarloIterations = Long.MAX_VALUE;
+    int searchThreads = 1;
+    MoveStrategy strategy = MoveStrategy.DEFAULT;
+    int searchDepth = DEFAULT_SEARCH_DEPTH;
+    long moveTimeMillis = DEFAULT_MOVE_TIME_MILLIS;
+    DecisionListener decisionListener = DecisionListener.NONE;
+    AgentMetrics metrics; // null when the agent keeps no metrics
+    OpeningBook openingBook; // null when the agent has no book
+    SolvedPositionStore solvedPositions; // null when the agent keeps no proven positions
+    DecisionReason lastReason; // why chooseColumn() chose its last column
+    int lastDepth;
 
     /**
      * Constructs a new agent, giving it the game and telling it whether it is Red or Yellow.
@@ -11,9 +44,318 @@ public class MyAgent extends Agent
      * @param iAmRed True if the agent is Red, False if the agent is Yellow.
      */
     public MyAgent(Connect4Game game, boolean iAmRed)
+    {
+        this(game, iAmRed, DEFAULT_TABLE_BYTES);
+    }
+
+    /**
+     * Constructs a new agent whose transposition table uses a given amount of memory.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param tableBytes The memory the agent's transposition table may use, in bytes.
+     */
+    public MyAgent(Connect4Game game, boolean iAmRed, long tableBytes)
+    {
+        this(game, iAmRed, new TranspositionTable(tableBytes));
+    }
+
+    /**
+     * Constructs a new agent that keeps its search results in a given transposition table,
+     * which it may share with other agents.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param table The table the agent's searches use.
+     */
+    public MyAgent(Connect4Game game, boolean iAmRed, TranspositionTable table)
+    {
+        this(game, iAmRed, table, DEFAULT_CONNECT_LENGTH);
+    }
+
+    /**
+     * Constructs a new agent for a game won by a line of some other length than four. Boards
+     * that fit in a Connect4Bitboard get the bitboard search, the endgame solver and the
+     * opening book; larger boards are played with a GeneralBoard and a plain GeneralSearch.
+     * 
+     * @param game The game the agent will be playing.
+     * @param iAmRed True if the agent is Red, False if the agent is Yellow.
+     * @param table The table the agent's searches use.
+     * @param connectLength The number of tokens in a row that wins the game.
+     */
+    public MyAgent(Connect4Game game, boolean iAmRed, TranspositionTable table, int connectLength)
     {
         super(game, iAmRed);
         r = new Random();
+        rowCount = game.getColumn(0).getRowCount();
+        this.connectLength = connectLength;
+        this.table = table;
+        lines = WinLines.forBoard(game.getColumnCount(), rowCount, connectLength);
+        if (Connect4Bitboard.fits(game.getColumnCount(), rowCount))
+        {
+            board = new Connect4Bitboard(game.getColumnCount(), rowCount, connectLength);
+            search = new NegamaxSearch(board, table);
+            search.setEvaluationWeights(EvaluationWeights.DEFAULT);
+            threats = new ThreatAnalyzer(board);
+        }
+        else
+        {
+            generalBoard = new GeneralBoard(game.getColumnCount(), rowCount, connectLength);
+            generalSearch = new GeneralSearch(generalBoard, table);
+        }
+    }
+
+    /**
+     * Sets how the agent chooses its moves. MoveStrategy.DEFAULT, used until this is called,
+     * plays a win, a block, the opening book, a stored position, the endgame solver, the Monte
+     * Carlo tree search and the alpha-beta search, the first that has a column, and a random
+     * safe column if none has. The settings of each step, such as setSearchDepth() and
+     * setMonteCarlo(), still apply.
+     *
+     * @param strategy the strategy to choose moves with, such as MoveStrategy.chain(...)
+     */
+    public void setStrategy(MoveStrategy strategy)
+    {
+        this.strategy = (strategy != null) ? strategy : MoveStrategy.DEFAULT;
+    }
+
+    /**
+     * Sets the most moves ahead the agent searches when it has neither a win nor a block to
+     * play. A depth of 0 turns the search off and the agent plays a random safe move instead.
+     *
+     * @param searchDepth the most moves to look ahead
+     */
+    public void setSearchDepth(int searchDepth)
+    {
+        this.searchDepth = searchDepth;
+    }
+
+    /**
+     * Sets the listener told about every move the agent plays. By default decisions are not
+     * reported anywhere; a RingBufferDecisionLog writes them out without holding up the game.
+     *
+     * @param decisionListener the listener to report decisions to
+     */
+    public void setDecisionListener(DecisionListener decisionListener)
+    {
+        this.decisionListener = (decisionListener != null) ? decisionListener : DecisionListener.NONE;
+    }
+
+    /**
+     * Sets the metrics the agent records every move into. The same metrics may be shared by
+     * any number of agents; register them with AgentMetrics.register() to read them over JMX.
+     *
+     * @param metrics the metrics to record into; null to keep none
+     */
+    public void setMetrics(AgentMetrics metrics)
+    {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets the opening book the agent consults before searching. Positions found in the book
+     * are played straight from it. The book may be shared by any number of agents.
+     *
+     * @param openingBook the book to use, for a board of the same size; null for no book
+     */
+    public void setOpeningBook(OpeningBook openingBook)
+    {
+        if (openingBook != null && (board == null || connectLength != 4))
+        {
+            throw new IllegalArgumentException("Opening books are only for four in a row on a board that fits a bitboard");
+        }
+        if (openingBook != null
+            && (openingBook.getColumnCount() != board.getColumnCount() || openingBook.getRowCount() != board.getRowCount()))
+        {
+            throw new IllegalArgumentException("The opening book is for a " + openingBook.getColumnCount() + "x"
+                + openingBook.getRowCount() + " board");
+        }
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Sets the store the agent looks up positions proven in earlier games in, and adds every
+     * position it proves to. Positions found there are played at once, without searching. The
+     * store may be shared by any number of agents.
+     *
+     * @param store the store to use, for a board of the same size and line length; null for none
+     */
+    public void setSolvedPositionStore(SolvedPositionStore store)
+    {
+        if (store != null && (board == null || store.getColumnCount() != board.getColumnCount()
+            || store.getRowCount() != board.getRowCount() || store.getConnectLength() != connectLength))
+        {
+            throw new IllegalArgumentException("The store is for a " + store.getColumnCount() + "x" + store.getRowCount()
+                + " board with lines of " + store.getConnectLength());
+        }
+        this.solvedPositions = store;
+    }
+
+    /**
+     * Sets how few empty slots must be left before the agent stops estimating and solves the
+     * rest of the game exactly. If the solver cannot finish within the move's time budget the
+     * agent searches as usual with the time that is left.
+     *
+     * @param emptySlots the most empty slots the solver takes over at; 0 turns the solver off
+     */
+    public void setEndgameEmptySlots(int emptySlots)
+    {
+        this.endgameEmptySlots = emptySlots;
+    }
+
+    /**
+     * Sets the memory the endgame solver's cache may use. The cache is only allocated the
+     * first time the agent reaches the endgame, so agents that never get there cost nothing.
+     *
+     * @param cacheBytes the memory of the cache, in bytes
+     */
+    public void setEndgameCacheBytes(long cacheBytes)
+    {
+        if (endgameSolver != null && cacheBytes != endgameCacheBytes)
+        {
+            endgameSolver = null; // made again at the new size when next needed
+        }
+        this.endgameCacheBytes = cacheBytes;
+    }
+
+    /**
+     * Sets the move ordering heuristics of the agent's search; see NegamaxSearch. Only
+     * THREAT_ORDERING is on by default. Boards too large for a bitboard search in center-first
+     * order only.
+     *
+     * @param moveOrdering any of NegamaxSearch.KILLER_MOVES, HISTORY_HEURISTIC and
+     *        THREAT_ORDERING combined with |; 0 for center-first order only
+     */
+    public void setMoveOrdering(int moveOrdering)
+    {
+        if (search != null)
+        {
+            search.setMoveOrdering(moveOrdering);
+        }
+    }
+
+    /**
+     * Sets the weights the agent's search scores positions with when it cannot see to the end
+     * of the game; see Evaluator. EvaluationWeights.DEFAULT is used until this is called. Boards
+     * too large for a bitboard score every such position 0.
+     *
+     * @param weights the weights to use, such as EvaluationWeights.DEFAULT or weights read with
+     *        EvaluationWeights.load(); null to score every undecided position 0
+     */
+    public void setEvaluationWeights(EvaluationWeights weights)
+    {
+        if (search != null)
+        {
+            search.setEvaluationWeights(weights);
+        }
+    }
+
+    /**
+     * Sets how many threads search each move. With more than one thread the extra threads
+     * search the same position and share the transposition table with the calling thread,
+     * which still places the single token. With one thread, the default, every search is
+     * repeatable from move to move. Boards too large for a bitboard are always searched on the
+     * calling thread only.
+     *
+     * @param threadCount the number of searching threads, including the thread calling move()
+     */
+    public void setSearchThreads(int threadCount)
+    {
+        searchThreads = threadCount;
+        if (monteCarlo != null && monteCarlo.getThreadCount() != threadCount)
+        {
+            setMonteCarlo(true); // start the tree search over with the new number of threads
+        }
+        if (parallelSearch != null)
+        {
+            parallelSearch.shutdown();
+            parallelSearch = null;
+        }
+        if (threadCount > 1 && board != null)
+        {
+            parallelSearch = new ParallelSearch(search, board, table, threadCount);
+        }
+    }
+
+    /**
+     * Sets whether the agent keeps searching on a background thread between its moves, while
+     * the opponent thinks. The results fill the transposition table, so the next move starts
+     * from a search that is already several moves deep; move() stops the background search as
+     * soon as it is called, so pondering adds nothing to the time a move takes. Boards too
+     * large for a bitboard never ponder.
+     *
+     * @param pondering true to search during the opponent's turn
+     */
+    public void setPondering(boolean pondering)
+    {
+        if (ponderer != null)
+        {
+            ponderer.shutdown();
+            ponderer = null;
+        }
+        if (pondering && board != null)
+        {
+            ponderer = new Ponderer(board.getColumnCount(), board.getRowCount(), connectLength, table);
+        }
+    }
+
+    /**
+     * Sets whether the agent looks ahead with a Monte Carlo tree search (see MonteCarloSearch)
+     * instead of the alpha-beta search. Wins, blocks, the opening book, stored positions and
+     * the endgame solver still come first. The tree search runs on as many threads as
+     * setSearchThreads() gave, keeps what it can of its tree from one move to the next, and
+     * stops at the move time or after setMonteCarloIterations() playouts, whichever comes
+     * first. The agent does not ponder while it is on. Boards too large for a bitboard always
+     * use the alpha-beta search.
+     *
+     * @param monteCarlo true for the tree search, false for the alpha-beta search
+     */
+    public void setMonteCarlo(boolean monteCarlo)
+    {
+        if (this.monteCarlo != null)
+        {
+            this.monteCarlo.shutdown();
+            this.monteCarlo = null;
+        }
+        if (monteCarlo && board != null)
+        {
+            this.monteCarlo = new MonteCarloSearch(board.getColumnCount(), board.getRowCount(), connectLength,
+                MonteCarloSearch.DEFAULT_NODES_PER_THREAD, searchThreads, r.nextLong());
+        }
+    }
+
+    /**
+     * Sets the most playouts the Monte Carlo tree search may run per move, over all its
+     * threads. With one thread and a limit that is reached before the move time, every move
+     * is repeatable from run to run.
+     *
+     * @param iterations the most playouts per move; 0 for no limit but the move time
+     */
+    public void setMonteCarloIterations(long iterations)
+    {
+        monteCarloIterations = (iterations > 0) ? iterations : Long.MAX_VALUE;
+    }
+
+    /**
+     * Stops any threads the agent started. The agent must not be asked to move afterwards.
+     */
+    public void shutdown()
+    {
+        setMonteCarlo(false);
+        setPondering(false);
+        setSearchThreads(1);
+    }
+
+    /**
+     * Sets the wall-clock time move() may take. The agent searches one move deeper at a time
+     * and places its token once the next depth would not finish in time, or as soon as it has
+     * proven the result of the game.
+     *
+     * @param moveTimeMillis the time allowed for each move in milliseconds
+     */
+    public void setMoveTimeMillis(long moveTimeMillis)
+    {
+        this.moveTimeMillis = moveTimeMillis;
     }
 
     /**
@@ -37,38 +379,313 @@ public class MyAgent extends Agent
      */
     public void move()
     {
-        
-        int gameEndingColumnIndex = iCanWin();
-        
-        if (gameEndingColumnIndex != -1
-            && !myGame.getColumn(gameEndingColumnIndex).getIsFull()) // I can win
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + moveTimeMillis * 1000000L * 9 / 10; // keep a tenth back for placing the token
+        if (ponderer != null)
         {
-            moveOnColumn(gameEndingColumnIndex); //play the winning move
-        
+            ponderer.stop(); // its results are in the table; the search below picks them up
         }
-        else //i can't win on this move
+        if (factory != null)
         {
-        
-            gameEndingColumnIndex = theyCanWin();
-        
-            if (gameEndingColumnIndex != -1
-                && ! myGame.getColumn(gameEndingColumnIndex).getIsFull()) //they can win
-            {
-                moveOnColumn(gameEndingColumnIndex); //block their win
-         
-            }
-            else //neither they nor I can win
-            {
-                int i = randomMove(); //generate a random move
-                int attemptCount = 1;
-                while((thisMoveOffersImmediateHorizontalWin(i) || thisMoveOffersImmediateDiagonallWin(i)) //while this move provides an immediate winning situation for the opponent
-                        && attemptCount<=100) //and we haven't tried a hundred random moves...
-                {
-                    i = randomMove(); //keep generating new random moves;
-                    attemptCount++;
-                }
-                moveOnColumn(i); //play a random move
-            }
+            factory.onMove(startNanos);
+        }
+        if (board != null)
+        {
+            board.update(myGame); // pick up the opponent's last token; every check below reads the bitboard
+        }
+        else
+        {
+            generalBoard.sync(myGame);
+        }
+
+        int column = chooseColumn(deadlineNanos);
+        moveOnColumn(column);
+        long elapsedNanos = System.nanoTime() - startNanos;
+        decisionListener.onDecision(column, lastReason, lastDepth, elapsedNanos);
+        if (metrics != null)
+        {
+            recordMetrics(metrics, elapsedNanos);
+        }
+        if (ponderer != null && monteCarlo == null && searchDepth > 0 && lastReason != DecisionReason.WIN && emptySlots() > 0)
+        {
+            ponderer.ponder(board, !iAmRed, searchDepth, search.getMoveOrdering(), search.getEvaluationWeights()); // search their replies while they think
+        }
+    }
+
+    /**
+     * Chooses the column to play in the position on the board, without placing a token, with
+     * the agent's strategy; a random safe column if the strategy passes. Why it was chosen is
+     * left in lastReason and lastDepth.
+     *
+     * @param deadlineNanos the System.nanoTime() by which the choice must be made
+     * @return the column to play
+     */
+    int chooseColumn(long deadlineNanos)
+    {
+        int column = strategy.chooseColumn(this, deadlineNanos);
+        return (column != MoveStrategy.PASS) ? column : playSafe(deadlineNanos);
+    }
+
+    /**
+     * Plays a winning column. The steps from here to playSafe() are the agent's MoveStrategy
+     * constants; each one returns MoveStrategy.PASS when it has nothing to play.
+     */
+    int playWin(long deadlineNanos)
+    {
+        int column = iCanWin();
+        if (column != -1 && !myGame.getColumn(column).getIsFull()) // I can win
+        {
+            return decide(column, DecisionReason.WIN, 0); //play the winning move
+        }
+        return MoveStrategy.PASS;
+    }
+
+    /**
+     * Plays the column the opponent would win in on their next move.
+     */
+    int playBlock(long deadlineNanos)
+    {
+        int column = theyCanWin();
+        if (column != -1 && !myGame.getColumn(column).getIsFull()) //they can win
+        {
+            return decide(column, DecisionReason.BLOCK, 0); //block their win
+        }
+        return MoveStrategy.PASS;
+    }
+
+    /**
+     * Plays the opening book's column.
+     */
+    int playBook(long deadlineNanos)
+    {
+        int column = (board != null) ? bookColumn() : -1;
+        return (column != -1) ? decide(column, DecisionReason.BOOK, 0) : MoveStrategy.PASS;
+    }
+
+    /**
+     * Plays the column an earlier game proved best.
+     */
+    int playStored(long deadlineNanos)
+    {
+        int column = (board != null) ? storedColumn() : -1;
+        return (column != -1) ? decide(column, DecisionReason.STORED, 0) : MoveStrategy.PASS;
+    }
+
+    /**
+     * Plays the endgame solver's column, once few enough slots are left and if the solver
+     * finishes in time. The solver and its cache are only made the first time they are needed.
+     */
+    int playEndgame(long deadlineNanos)
+    {
+        if (board == null || emptySlots() > endgameEmptySlots)
+        {
+            return MoveStrategy.PASS;
+        }
+        if (endgameSolver == null)
+        {
+            endgameSolver = new EndgameSolver(board, endgameCacheBytes);
+        }
+        if (endgameSolver.solve(iAmRed, deadlineNanos) == EndgameSolver.UNKNOWN) //the solver ran out of time
+        {
+            return MoveStrategy.PASS;
+        }
+        remember(endgameSolver.getScore(), endgameSolver.getBestColumn());
+        return decide(endgameSolver.getBestColumn(), DecisionReason.ENDGAME, emptySlots()); //play the proven best move
+    }
+
+    /**
+     * Plays the column the Monte Carlo tree search visited most, if setMonteCarlo() turned it on.
+     */
+    int playMonteCarlo(long deadlineNanos)
+    {
+        if (monteCarlo == null)
+        {
+            return MoveStrategy.PASS;
+        }
+        int column = monteCarlo.findBestColumn(board, iAmRed, monteCarloIterations, deadlineNanos);
+        return decide(column, DecisionReason.MONTE_CARLO, monteCarlo.getTreeDepth()); //play the most visited move
+    }
+
+    /**
+     * Plays the best column of the alpha-beta search, unless searching is turned off.
+     */
+    int playSearch(long deadlineNanos)
+    {
+        if (searchDepth <= 0)
+        {
+            return MoveStrategy.PASS;
+        }
+        if (board == null)
+        {
+            int column = generalSearch.findBestColumn(iAmRed, searchDepth, deadlineNanos);
+            return decide(column, DecisionReason.SEARCH, generalSearch.getCompletedDepth());
+        }
+        int bestColumn = (parallelSearch != null)
+            ? parallelSearch.findBestColumn(iAmRed, searchDepth, deadlineNanos)
+            : search.findBestColumn(iAmRed, searchDepth, deadlineNanos);
+        if (NegamaxSearch.isProven(search.getBestScore()))
+        {
+            remember(search.getBestScore(), bestColumn);
+        }
+        return decide(bestColumn, DecisionReason.SEARCH, search.getCompletedDepth()); //play the best move the search found
+    }
+
+    /**
+     * Plays a random column that does not hand the opponent a win, or any random column if
+     * there is none. Never passes.
+     */
+    int playSafe(long deadlineNanos)
+    {
+        if (board == null)
+        {
+            return decide(generalBoard.pickSafeColumn(iAmRed, r), DecisionReason.RANDOM, 0);
+        }
+        threats.analyze(iAmRed); //find every column that doesn't hand them a win
+        return decide(threats.pickSafeColumn(r), DecisionReason.RANDOM, 0); //play a random safe move
+    }
+
+    /**
+     * Switches the agent to a different game, copying that game's whole state into the bitboard.
+     * Lets one agent choose moves for many games in turn, as BatchMover does.
+     *
+     * @param game the game to play from now on
+     * @param iAmRed true if the agent plays Red in that game
+     */
+    void switchGame(Connect4Game game, boolean iAmRed)
+    {
+        this.myGame = game;
+        this.iAmRed = iAmRed;
+        syncBoard();
+    }
+
+    /**
+     * Returns the number of empty slots left on the board.
+     */
+    private int emptySlots()
+    {
+        return board.getColumnCount() * board.getRowCount() - board.getMoveCount();
+    }
+
+    /**
+     * Returns the opening book's column for the current position.
+     *
+     * @return the book's column; -1 if there is no book, the position is not in it, or the
+     *         book's column cannot be played
+     */
+    private int bookColumn()
+    {
+        if (openingBook == null)
+        {
+            return -1;
+        }
+        long hash = board.getCanonicalHash(iAmRed);
+        int column = openingBook.lookupColumn(hash);
+        if (column >= 0 && hash != board.getHash(iAmRed))
+        {
+            column = board.mirrorColumn(column); // the book holds the mirror image of this position
+        }
+        return (column >= 0 && column < board.getColumnCount() && board.canPlay(column)) ? column : -1;
+    }
+
+    /**
+     * Returns the stored column for the current position.
+     *
+     * @return the column proven best in an earlier game; -1 if there is no store, the position
+     *         is not in it, or the column cannot be played
+     */
+    private int storedColumn()
+    {
+        if (solvedPositions == null)
+        {
+            return -1;
+        }
+        long hash = board.getCanonicalHash(iAmRed);
+        int column = solvedPositions.lookupColumn(hash);
+        if (column >= 0 && hash != board.getHash(iAmRed))
+        {
+            column = board.mirrorColumn(column); // the store holds the mirror image of this position
+        }
+        return (column >= 0 && column < board.getColumnCount() && board.canPlay(column)) ? column : -1;
+    }
+
+    /**
+     * Adds the current position, just proven, to the store if there is one.
+     *
+     * @param score the proven score, from the point of view of the agent
+     * @param column the proven best column
+     */
+    private void remember(int score, int column)
+    {
+        if (solvedPositions != null && column >= 0)
+        {
+            long hash = board.getCanonicalHash(iAmRed);
+            solvedPositions.record(hash, score, (hash != board.getHash(iAmRed)) ? board.mirrorColumn(column) : column);
+        }
+    }
+
+    /**
+     * Records why a column was chosen, for the decision listener. Every MoveStrategy calls it
+     * with the column it plays.
+     *
+     * @param column the column chosen
+     * @param reason why the column was chosen
+     * @param searchDepth the deepest search finished for this move; 0 if there was no search
+     * @return the column
+     */
+    int decide(int column, DecisionReason reason, int searchDepth)
+    {
+        lastReason = reason;
+        lastDepth = searchDepth;
+        return column;
+    }
+
+    /**
+     * Records the last move chosen by chooseColumn() into metrics. A searched move counts the
+     * whole move's time as search time; the checks before the search take microseconds.
+     *
+     * @param metrics the metrics to record into
+     * @param elapsedNanos how long the move took
+     */
+    void recordMetrics(AgentMetrics metrics, long elapsedNanos)
+    {
+        metrics.recordMove(lastReason, elapsedNanos);
+        if (lastReason == DecisionReason.SEARCH)
+        {
+            long hits = (search != null) ? search.getTableHits() : 0; // only the calling thread's lookups are counted
+            long misses = (search != null) ? search.getTableMisses() : 0;
+            metrics.recordSearch(lastDepth, getLastSearchNodes(), elapsedNanos, hits, misses);
+        }
+    }
+
+    /**
+     * Returns the number of positions searched during the last move, over every search thread.
+     *
+     * @return the node count of the last search
+     */
+    public long getLastSearchNodes()
+    {
+        if (board == null)
+        {
+            return generalSearch.getNodeCount();
+        }
+        return (parallelSearch != null) ? parallelSearch.getNodeCount() : search.getNodeCount();
+    }
+
+    /**
+     * Copies the whole current state of the game into the agent's bitboard. move() only reads
+     * the top of each column to pick up the opponent's last token, and falls back to this when
+     * the game no longer matches the bitboard; iCanWin() and theyCanWin() read the board as of
+     * the last update.
+     */
+    public void syncBoard()
+    {
+        if (board != null)
+        {
+            board.sync(myGame);
+        }
+        else
+        {
+            generalBoard.sync(myGame);
         }
     }
 
@@ -80,7 +697,7 @@ public class MyAgent extends Agent
      */
     public void moveOnColumn(int columnNumber)
     {
-        int lowestEmptySlotIndex = getLowestEmptyIndex(myGame.getColumn(columnNumber));   // Find the top empty slot in the column
+        int lowestEmptySlotIndex = getLowestEmptyIndex(columnNumber);   // Find the top empty slot in the column
                                                                                                   // If the column is full, lowestEmptySlot will be -1
         if (lowestEmptySlotIndex > -1)  // if the column is not full
         {
@@ -93,7 +710,40 @@ public class MyAgent extends Agent
             {
                 lowestEmptySlot.addYellow(); // Place a yellow token into the empty slot
             }
+            if (board != null)
+            {
+                board.play(columnNumber, iAmRed); // keep the bitboard in step with the game
+            }
+            else
+            {
+                generalBoard.play(columnNumber, iAmRed);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the top empty slot in a particular column, from the bitboard's
+     * column heights. The two slots around the top of the column are checked against the
+     * game, and the bitboard is synced again only if they do not match it.
+     * 
+     * @param columnIndex The index of the column to check.
+     * @return the index of the top empty slot in the column; -1 if the column is already full.
+     */
+    public int getLowestEmptyIndex(int columnIndex)
+    {
+        Connect4Column column = myGame.getColumn(columnIndex);
+        if (board == null)
+        {
+            return getLowestEmptyIndex(column);
+        }
+        int index = board.getLowestEmptyIndex(columnIndex);
+        if ((index >= 0 && column.getSlot(index).getIsFilled())                         // the slot we think is empty is filled
+            || (index + 1 < column.getRowCount() && !column.getSlot(index + 1).getIsFilled())) // or the slot below it is empty
+        {
+            syncBoard();
+            index = board.getLowestEmptyIndex(columnIndex);
         }
+        return index;
     }
 
     /**
@@ -123,7 +773,7 @@ public class MyAgent extends Agent
     public int randomMove()
     {
         int i = r.nextInt(myGame.getColumnCount());
-        while (getLowestEmptyIndex(myGame.getColumn(i)) == -1)
+        while (myGame.getColumn(i).getIsFull())
         {
             i = r.nextInt(myGame.getColumnCount());
         }
@@ -142,34 +792,7 @@ public class MyAgent extends Agent
      */
     public int iCanWin()
     {
-        int horizontalWinColumn = findHorizontalWinColumn("myColor");
-        int diagonalWinColumn = findDiagonalWinColumn("myColor");
-        int redVerticalWinColumn = findRedVerticalWinColumn();
-        int yellowVerticalWinColumn = findYellowVerticalWinColumn();
-        if (horizontalWinColumn != -1)
-        {
-            System.out.println("I'm going to win horizontally by placing at column index "+horizontalWinColumn);
-            return horizontalWinColumn;
-        }
-        else if (diagonalWinColumn !=-1)
-        {
-            System.out.println("I'm going to win diagonally by placing at column index "+diagonalWinColumn);
-            return diagonalWinColumn;
-        }
-        else if (iAmRed && redVerticalWinColumn != -1)
-        {
-            System.out.println("I'm going to win vertically by placing at column index " + redVerticalWinColumn);
-            return redVerticalWinColumn;            
-        }
-        else if (!iAmRed && yellowVerticalWinColumn != -1)
-        {
-            System.out.println("I'm going to win vertically by placing at column index " + yellowVerticalWinColumn);
-            return yellowVerticalWinColumn;            
-        }
-        else
-        {
-            return -1;
-        }
+        return (board != null) ? board.findWinningColumn(iAmRed) : generalBoard.findWinningColumn(iAmRed);
     }
 
     /**
@@ -183,35 +806,7 @@ public class MyAgent extends Agent
      */
     public int theyCanWin()
     {
-        //check for horizontal winning opportunities i each column
-        int horizontalWinColumn = findHorizontalWinColumn("notMyColor");
-        int diagonalWinColumn = findDiagonalWinColumn("notMyColor");
-        int redVerticalWinColumn = findRedVerticalWinColumn();
-        int yellowVerticalWinColumn = findYellowVerticalWinColumn();
-        if (horizontalWinColumn != -1)
-        {
-            System.out.println("I'm going to block the opponent from winning horizontally by placing at column index " + horizontalWinColumn);
-            return horizontalWinColumn;
-        }
-        else if (diagonalWinColumn != -1)
-        {
-            System.out.println("I'm going to block the opponent from winning diagonally by placing at column index " + diagonalWinColumn);
-            return diagonalWinColumn;
-        }
-        else if (!iAmRed && redVerticalWinColumn != -1)
-        {
-            System.out.println("I'm going to block the opponent from winning vertically by placing at column index " + redVerticalWinColumn);
-            return redVerticalWinColumn;            
-        }
-        else if (iAmRed && yellowVerticalWinColumn != -1)
-        {
-            System.out.println("I'm going to block the opponent from winning vertically by placing at column index " + yellowVerticalWinColumn);
-            return yellowVerticalWinColumn;            
-        }
-        else
-        {
-            return -1;
-        }
+        return (board != null) ? board.findWinningColumn(!iAmRed) : generalBoard.findWinningColumn(!iAmRed);
     }
 
     /**
@@ -226,14 +821,15 @@ public class MyAgent extends Agent
 
     
     /**
-    *Returns whether or not the last 3 slots in this column were played by Red
+    *Returns whether or not the last connectLength - 1 slots (3 in Connect Four) in this column were played by Red
     *
     *@param column the column of interest
-    *@return true if last 3 slots are Red, otherwise False
+    *@return true if last connectLength - 1 slots are Red, otherwise False
     */
     public boolean areLast3VerticalRed(Connect4Column column)
     {
-        if (getLowestEmptyIndex(column) > 2)
+        int lowestEmptyIndex = getLowestEmptyIndex(column);
+        if (lowestEmptyIndex > column.getRowCount() - connectLength) // too few tokens below to need only one more
         {
             return false;
         }
@@ -241,11 +837,11 @@ public class MyAgent extends Agent
         {   
             int redCount = 0;
             boolean lastWasRed = true; 
-            int index = getLowestEmptyIndex(column) + 1;
+            int index = lowestEmptyIndex + 1;
 
             while (lastWasRed // last slot checked was red
-                && redCount<3 // we haven't yet seen 3 consecutive red spaces
-                && index<=column.getRowCount()) // we haven't exceeded the reange of slots that exist
+                && redCount<connectLength - 1 // we haven't yet seen 3 consecutive red spaces
+                && index<column.getRowCount()) // we haven't exceeded the reange of slots that exist
             {
                 lastWasRed = column.getSlot(index).getIsRed(); //check if this  slot is red
                 if (lastWasRed)
@@ -254,7 +850,7 @@ public class MyAgent extends Agent
                 }
                 index++; //go to the previously played slot
             }
-            if (redCount == 3) //if we found 3 consecutive red slots
+            if (redCount == connectLength - 1) //if we found 3 consecutive red slots
             {
                 return true;
             }
@@ -267,7 +863,8 @@ public class MyAgent extends Agent
 
     public boolean areLast3VerticalYellow(Connect4Column column)
     {
-        if (getLowestEmptyIndex(column) > 2)
+        int lowestEmptyIndex = getLowestEmptyIndex(column);
+        if (lowestEmptyIndex > column.getRowCount() - connectLength)
         {
             return false;
         }
@@ -275,11 +872,11 @@ public class MyAgent extends Agent
         {   
             int yellowCount = 0;
             boolean lastWasYellow = true; 
-            int index = getLowestEmptyIndex(column) + 1;
+            int index = lowestEmptyIndex + 1;
 
             while (lastWasYellow // last slot checked was yellow
-                && yellowCount<3 // we haven't yet seen 3 consecutive yello spaces
-                && index<=column.getRowCount()) // we haven't exceeded the reange of slots that exist
+                && yellowCount<connectLength - 1 // we haven't yet seen 3 consecutive yello spaces
+                && index<column.getRowCount()) // we haven't exceeded the reange of slots that exist
             {
                 lastWasYellow = (column.getSlot(index).getIsFilled() // check if the slot is filled
                                 && !column.getSlot(index).getIsRed()); // check if this  slot is not red
@@ -289,7 +886,7 @@ public class MyAgent extends Agent
                 }
                 index++; //go to the previously played slot
             }
-            if (yellowCount == 3) //if we found 3 consecutive red slots
+            if (yellowCount == connectLength - 1) //if we found 3 consecutive red slots
             {
                 return true;
             }
@@ -348,10 +945,10 @@ public class MyAgent extends Agent
         {
             if(!myGame.getColumn(thisColumnIndex).getIsFull())
             {
-                int playableSlotIndex = getLowestEmptyIndex(myGame.getColumn(thisColumnIndex));
+                int playableSlotIndex = getLowestEmptyIndex(thisColumnIndex);
                 int matchesToLeft = matchingSpacesToLeft(thisColumnIndex, playableSlotIndex, whosColor);
                 int matchesToRight = matchingSpacesToRight(thisColumnIndex, playableSlotIndex, whosColor);
-                if (matchesToRight+matchesToLeft >=3)
+                if (matchesToRight+matchesToLeft >= connectLength - 1)
                 {
                     winningColumnIndex = thisColumnIndex;
                 }    
@@ -396,20 +993,12 @@ public class MyAgent extends Agent
 
     public int matchingSpacesToLeft(int columnIndex, int slotIndex, String whosColor)
     {
-        int maxLeftDistance = -1;
-        if (columnIndex >= 3)
-        {
-            maxLeftDistance = 3;
-        }
-        else
-        {
-            maxLeftDistance = columnIndex;
-        }
+        int maxLeftDistance = getMaxLeftDistance(columnIndex);
 
         int matchingSpacesToLeft = 0;
         int distanceGoneToLeft = 1;
         boolean stillMatching = true;
-        while (distanceGoneToLeft <= maxLeftDistance && matchingSpacesToLeft < 3 && stillMatching)
+        while (distanceGoneToLeft <= maxLeftDistance && matchingSpacesToLeft < connectLength - 1 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex - distanceGoneToLeft).getSlot(slotIndex);
             if (whosColor.equals("notMyColor"))
@@ -448,7 +1037,7 @@ public class MyAgent extends Agent
         int matchingSpacesToRight = 0;
         int distanceGoneToRight = 1;
         boolean stillMatching = true;
-        while (distanceGoneToRight <= maxDistance && matchingSpacesToRight < 3 && stillMatching)
+        while (distanceGoneToRight <= maxDistance && matchingSpacesToRight < connectLength - 1 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex+distanceGoneToRight).getSlot(slotIndex);
             if (whosColor.equals("notMyColor"))
@@ -481,13 +1070,13 @@ public class MyAgent extends Agent
 
     public int getColumnsToRight(int columnIndex)
     {
-        return myGame.getColumnCount()-columnIndex-1;
+        return lines.getColumnsToRight(columnIndex);
     }
 
     //checks if moving on specified column index offers the opponent an immediate horizontal win
     public boolean thisMoveOffersImmediateHorizontalWin(int columnIndex) 
     {
-        int nextPlayableSlotIndex = getLowestEmptyIndex(myGame.getColumn(columnIndex)) - 1;
+        int nextPlayableSlotIndex = getLowestEmptyIndex(columnIndex) - 1;
         if (nextPlayableSlotIndex < 0)
         {            
             return false;
@@ -496,7 +1085,7 @@ public class MyAgent extends Agent
         {
             int matchesToLeft = matchingSpacesToLeft(columnIndex, nextPlayableSlotIndex, "notMyColor");
             int matchesToRight = matchingSpacesToRight(columnIndex, nextPlayableSlotIndex, "notMyColor");
-            if (matchesToRight+matchesToLeft >=3)
+            if (matchesToRight+matchesToLeft >= connectLength - 1)
             {
                 return true;
             }
@@ -509,7 +1098,7 @@ public class MyAgent extends Agent
 
     public boolean thisMoveOffersImmediateDiagonallWin(int columnIndex) 
     {
-        int nextPlayableSlotIndex = getLowestEmptyIndex(myGame.getColumn(columnIndex)) - 1;
+        int nextPlayableSlotIndex = getLowestEmptyIndex(columnIndex) - 1;
         if (nextPlayableSlotIndex < 0)
         {            
             return false;
@@ -521,8 +1110,8 @@ public class MyAgent extends Agent
             int diagonalMatchesUpRight = getDiagonalMatchesUpRight(columnIndex, nextPlayableSlotIndex, "notMyColor");
             int diagonalMatchesDownRight = getDiagonalMatchesDownRight(columnIndex, nextPlayableSlotIndex, "notMyColor");
 
-            if (diagonalMatchesUpLeft+diagonalMatchesDownRight >=3
-                || diagonalMatchesDownLeft+diagonalMatchesUpRight >=3)
+            if (diagonalMatchesUpLeft+diagonalMatchesDownRight >= connectLength - 1
+                || diagonalMatchesDownLeft+diagonalMatchesUpRight >= connectLength - 1)
             {
                 return true;
             }
@@ -545,7 +1134,7 @@ public class MyAgent extends Agent
         boolean stillMatching = true;
         while (columnsTraversed <= maxColumnTraversal
                 && rowsTraversed <= maxRowTraversal
-                && matchingSlots < 3
+                && matchingSlots < connectLength - 1
                 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex - columnsTraversed).getSlot(slotIndex - rowsTraversed);
@@ -592,7 +1181,7 @@ public class MyAgent extends Agent
         boolean stillMatching = true;
         while (columnsTraversed <= maxColumnTraversal
                 && rowsTraversed <= maxRowTraversal
-                && matchingSlots < 3
+                && matchingSlots < connectLength - 1
                 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex - columnsTraversed).getSlot(slotIndex+rowsTraversed);
@@ -638,7 +1227,7 @@ public class MyAgent extends Agent
         boolean stillMatching = true;
         while (columnsTraversed <= maxColumnTraversal
                 && rowsTraversed <= maxRowTraversal
-                && matchingSlots < 3
+                && matchingSlots < connectLength - 1
                 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex + columnsTraversed).getSlot(slotIndex-rowsTraversed);
@@ -684,7 +1273,7 @@ public class MyAgent extends Agent
         boolean stillMatching = true;
         while (columnsTraversed <= maxColumnTraversal
                 && rowsTraversed <= maxRowTraversal
-                && matchingSlots < 3
+                && matchingSlots < connectLength - 1
                 && stillMatching)
         {
             Connect4Slot thisTestSlot = myGame.getColumn(columnIndex + columnsTraversed).getSlot(slotIndex+rowsTraversed);
@@ -729,14 +1318,14 @@ public class MyAgent extends Agent
         {
             if(!myGame.getColumn(thisColumnIndex).getIsFull())
             {
-                int playableSlotIndex = getLowestEmptyIndex(myGame.getColumn(thisColumnIndex));
+                int playableSlotIndex = getLowestEmptyIndex(thisColumnIndex);
                 int diagonalMatchesUpLeft = getDiagonalMatchesUpLeft(thisColumnIndex, playableSlotIndex, whosColor);
                 int diagonalMatchesDownLeft = getDiagonalMatchesDownLeft(thisColumnIndex, playableSlotIndex, whosColor);
                 int diagonalMatchesUpRight = getDiagonalMatchesUpRight(thisColumnIndex, playableSlotIndex, whosColor);
                 int diagonalMatchesDownRight = getDiagonalMatchesDownRight(thisColumnIndex, playableSlotIndex, whosColor);
 
-                if (diagonalMatchesUpLeft+diagonalMatchesDownRight >=3
-                    || diagonalMatchesDownLeft+diagonalMatchesUpRight >=3)
+                if (diagonalMatchesUpLeft+diagonalMatchesDownRight >= connectLength - 1
+                    || diagonalMatchesDownLeft+diagonalMatchesUpRight >= connectLength - 1)
                 {
                     winningColumnIndex = thisColumnIndex;
                 }    
@@ -749,39 +1338,17 @@ public class MyAgent extends Agent
 
     public int getSlotsBelow(int slotIndex)
     {
-        return myGame.getColumn(0).getRowCount() - 1 - slotIndex;
+        return lines.getSlotsBelow(slotIndex);
     }
 
     public int getMaxLeftDistance(int columnIndex)
     {
-        int maxLeftDistance = -1;
-        if (columnIndex >= 3)
-        {
-            maxLeftDistance = 3;
-        }
-        else
-        {
-            maxLeftDistance = columnIndex;
-        }
-        return maxLeftDistance;
+        return lines.getMaxLeftDistance(columnIndex);
     }
 
     public int getMaxRightDistance(int columnIndex)
     {
-        int columnsToRight = getColumnsToRight(columnIndex);
-
-        int maxDistance = -1;
-        if (columnsToRight >= 3)
-        {
-            maxDistance = 3;
-        }
-        else
-        {
-            maxDistance = columnsToRight;
-        }
-
-        return maxDistance;
-
+        return lines.getMaxRightDistance(columnIndex);
     }
 
     /**
@@ -0,0 +1,582 @@
+/**
+ * A negamax search with alpha-beta pruning over a Connect4Bitboard.
+ *
+ * Scores are always from the point of view of the player about to move. A win scores
+ * WIN_SCORE minus the number of tokens on the board when it is completed, so quicker wins score
+ * higher and slower losses score higher than quick ones. Positions that are not decided within
+ * the search depth score 0, or, once setEvaluationWeights() has been given weights, the
+ * Evaluator's estimate, which is kept clear of the scores of proven results.
+ *
+ * Results are kept in a TranspositionTable, so a position reached again through a different
+ * move order is not searched twice, and the best column found for it is tried first next time.
+ * A position and its mirror image share one entry, under Connect4Bitboard.getCanonicalHash(),
+ * with the best column stored as it is in whichever of the two has that hash.
+ *
+ * The search deepens one move at a time until it reaches its maximum depth, runs out of time,
+ * or proves the result of the game. Every finished depth leaves a usable answer, and the best
+ * column of one depth is searched first at the next.
+ *
+ * Moves are searched best-looking first, since alpha-beta prunes the most when the best move
+ * comes first. The table's best column always leads. The rest are ordered by heuristics that
+ * can each be switched off with setMoveOrdering(), each one only breaking the ties left by the
+ * one before it, and center-first order breaking the ties left by all of them:
+ * - THREAT_ORDERING: how many winning cells the move leaves the player;
+ * - KILLER_MOVES: the two moves that last caused a cutoff at the same ply of the search;
+ * - HISTORY_HEURISTIC: how often, and how deep, the move has caused cutoffs anywhere.
+ * Killers are kept per cell rather than per column, since the same column at another height is
+ * a different move. Only THREAT_ORDERING is on by default.
+ */
+public class NegamaxSearch
+{
+    public static final int WIN_SCORE = 1000;
+
+    // move ordering heuristics, combined as bit flags
+    public static final int KILLER_MOVES = 1;
+    public static final int HISTORY_HEURISTIC = 2;
+    public static final int THREAT_ORDERING = 4;
+    public static final int ALL_MOVE_ORDERING = KILLER_MOVES | HISTORY_HEURISTIC | THREAT_ORDERING;
+
+    private static final int NODES_BETWEEN_CLOCK_CHECKS = 1024;
+    private static final int MAX_BOARD_SLOTS = 64; // no bitboard holds more slots than this
+
+    // ordering keys: the table's move first, then by threats; between equal threat counts
+    // killers come first and then the rest by history
+    private static final int TABLE_MOVE_KEY = Integer.MAX_VALUE;
+    private static final int THREAT_KEY = 1 << 22;
+    private static final int KILLER_KEY = 1 << 21;
+    private static final int MAX_HISTORY = KILLER_KEY - 1;
+
+    private final Connect4Bitboard board;
+    private final TranspositionTable table;
+    private final int[] columnOrder; // columns sorted from the center outwards
+    private final int[][] moveBuffers; // the moves of each ply, so ordering them allocates nothing
+    private final int[][] moveKeys;
+    private final int[] killers = new int[2 * (MAX_BOARD_SLOTS + 1)]; // two per ply, most recent first
+    private final int[] history = new int[2 * MAX_BOARD_SLOTS]; // per color and cell
+    private int moveOrdering = THREAT_ORDERING; // killers and history searched more nodes on the benchmark corpus
+    private EvaluationWeights evaluationWeights; // null while undecided positions score 0
+    private Evaluator evaluator;
+
+    private long deadlineNanos;
+    private boolean timedOut;
+    private long nodeCount;
+    private long tableHits;
+    private long tableMisses;
+    private volatile boolean stopRequested;
+    private int firstDepth = 1;
+    private boolean agesTable = true;
+    private int rootMoveCount;
+    private int rootBestColumn;
+    private int completedDepth;
+    private int bestScore;
+
+    /**
+     * Constructs a search over the given bitboard. The search plays and takes back moves on the
+     * bitboard while it runs and leaves it as it found it.
+     *
+     * @param board the board to search
+     * @param table the table to keep search results in
+     */
+    public NegamaxSearch(Connect4Bitboard board, TranspositionTable table)
+    {
+        this.board = board;
+        this.table = table;
+        this.columnOrder = centerFirstOrder(board.getColumnCount());
+        this.moveBuffers = new int[MAX_BOARD_SLOTS + 1][board.getColumnCount()];
+        this.moveKeys = new int[MAX_BOARD_SLOTS + 1][board.getColumnCount()];
+    }
+
+    /**
+     * Searches the current position and returns the best column for the player to move.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param maxDepth the most moves to look ahead
+     * @param deadlineNanos the System.nanoTime() by which the search must return; once it passes
+     *        the best column of the deepest finished search is returned
+     * @return the best column found; -1 if the board is full
+     */
+    public int findBestColumn(boolean red, int maxDepth, long deadlineNanos)
+    {
+        return deepen(red, maxDepth, deadlineNanos);
+    }
+
+    private int deepen(boolean red, int maxDepth, long deadlineNanos)
+    {
+        this.deadlineNanos = deadlineNanos;
+        timedOut = false;
+        nodeCount = 0;
+        tableHits = 0;
+        tableMisses = 0;
+        completedDepth = 0;
+        bestScore = 0;
+
+        int forcedColumn = forcedColumn(red);
+        if (forcedColumn != -1)
+        {
+            return forcedColumn;
+        }
+
+        if (agesTable)
+        {
+            table.newSearch();
+        }
+        if (evaluator != null)
+        {
+            evaluator.sync(board);
+        }
+        java.util.Arrays.fill(killers, -1);
+        for (int i = 0; i < history.length; i++)
+        {
+            history[i] >>= 1; // older searches count for less
+        }
+        rootMoveCount = board.getMoveCount();
+        rootBestColumn = -1;
+        long rootHash = board.getCanonicalHash(red);
+        long entry = table.probe(rootHash);
+        if (entry != 0)
+        {
+            int tableMove = TranspositionTable.moveOf(entry);
+            if (tableMove >= 0 && rootHash != board.getHash(red))
+            {
+                tableMove = board.mirrorColumn(tableMove);
+            }
+            if (tableMove >= 0 && board.canPlay(tableMove))
+            {
+                rootBestColumn = tableMove; // left behind by an earlier search of this position
+            }
+        }
+        for (int i = 0; i < columnOrder.length && rootBestColumn == -1; i++)
+        {
+            if (board.canPlay(columnOrder[i]))
+            {
+                rootBestColumn = columnOrder[i]; // always have a legal answer, even if time runs out at once
+            }
+        }
+
+        int emptySlots = board.getColumnCount() * board.getRowCount() - rootMoveCount;
+        int depthLimit = Math.min(maxDepth, emptySlots);
+        for (int depth = Math.min(firstDepth, depthLimit); depth <= depthLimit; depth++)
+        {
+            int score = negamax(red, depth, -WIN_SCORE, WIN_SCORE);
+            if (timedOut)
+            {
+                break; // rootBestColumn is still the best of the last finished depth, or a column that beat it
+            }
+            completedDepth = depth;
+            bestScore = score;
+            if (isProven(score))
+            {
+                break;
+            }
+        }
+        return rootBestColumn;
+    }
+
+    /**
+     * Returns whether a score is a forced win or loss rather than an estimate.
+     *
+     * @param score a score returned by the search
+     */
+    public static boolean isProven(int score)
+    {
+        return Math.abs(score) > WIN_SCORE - MAX_BOARD_SLOTS;
+    }
+
+    /**
+     * Returns the deepest search depth the last search finished.
+     */
+    public int getCompletedDepth()
+    {
+        return completedDepth;
+    }
+
+    /**
+     * Returns the score of the position found by the deepest finished search.
+     */
+    public int getBestScore()
+    {
+        return bestScore;
+    }
+
+    /**
+     * Asks a running search, from another thread, to stop as if its deadline had passed. If
+     * no search is running the next one stops at once: the request holds until clearStop(), so
+     * a stop() that arrives just before a search starts still counts.
+     */
+    public void stop()
+    {
+        stopRequested = true;
+    }
+
+    /**
+     * Withdraws a stop() request. Owners that stop the search from another thread call this
+     * before handing it its next position, so that a stop() that came after the last search
+     * had already finished does not cut the next one short.
+     */
+    public void clearStop()
+    {
+        stopRequested = false;
+    }
+
+    /**
+     * Sets the depth the next searches start deepening from. Helper threads of a parallel
+     * search start at different depths so that they do not all search the same tree in step.
+     *
+     * @param firstDepth the first depth to search
+     */
+    public void setFirstDepth(int firstDepth)
+    {
+        this.firstDepth = Math.max(1, firstDepth);
+    }
+
+    /**
+     * Sets the move ordering heuristics the next searches use.
+     *
+     * @param moveOrdering any of KILLER_MOVES, HISTORY_HEURISTIC and THREAT_ORDERING combined
+     *        with |; 0 for center-first order only
+     */
+    public void setMoveOrdering(int moveOrdering)
+    {
+        this.moveOrdering = moveOrdering;
+    }
+
+    public int getMoveOrdering()
+    {
+        return moveOrdering;
+    }
+
+    /**
+     * Sets the weights the next searches score undecided positions with, at the leaves of the
+     * search, instead of scoring them all 0.
+     *
+     * @param weights the weights of the Evaluator's terms; null to score undecided positions 0
+     */
+    public void setEvaluationWeights(EvaluationWeights weights)
+    {
+        if (weights != evaluationWeights)
+        {
+            evaluationWeights = weights;
+            evaluator = (weights != null)
+                ? new Evaluator(board.getColumnCount(), board.getRowCount(), board.getConnectLength(), weights)
+                : null;
+        }
+    }
+
+    public EvaluationWeights getEvaluationWeights()
+    {
+        return evaluationWeights;
+    }
+
+    /**
+     * Forgets the history heuristic's counts, so that the next search orders its moves as if
+     * no search had come before it.
+     */
+    public void clearHistory()
+    {
+        java.util.Arrays.fill(history, 0);
+    }
+
+    /**
+     * Sets whether each search starts a new generation of the transposition table, so that
+     * entries left by earlier searches are replaced first. Searches that share a table with
+     * searches of other games turn this off and let their owner start generations instead;
+     * otherwise each would age the others' entries while they are still being used.
+     *
+     * @param agesTable true to start a new generation with every search
+     */
+    public void setAgesTable(boolean agesTable)
+    {
+        this.agesTable = agesTable;
+    }
+
+    /**
+     * Returns the number of positions visited by the last search.
+     */
+    public long getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Returns how many transposition table lookups of the last search found their position.
+     * Only this search's own lookups are counted, not those of other searches sharing the table;
+     * the table itself keeps no counts.
+     */
+    public long getTableHits()
+    {
+        return tableHits;
+    }
+
+    /**
+     * Returns how many transposition table lookups of the last search missed.
+     */
+    public long getTableMisses()
+    {
+        return tableMisses;
+    }
+
+    /**
+     * Returns whether the last search ran out of time before finishing.
+     */
+    public boolean timedOut()
+    {
+        return timedOut;
+    }
+
+    private int negamax(boolean red, int depth, int alpha, int beta)
+    {
+        nodeCount++;
+        if ((nodeCount % NODES_BETWEEN_CLOCK_CHECKS) == 0
+            && (stopRequested || System.nanoTime() > deadlineNanos))
+        {
+            timedOut = true;
+        }
+        if (timedOut)
+        {
+            return 0;
+        }
+
+        int moveCount = board.getMoveCount();
+        if (board.playableWinningCells(red) != 0) // I can win
+        {
+            return WIN_SCORE - (moveCount + 1);
+        }
+        long theirWins = board.playableWinningCells(!red);
+        if (Long.bitCount(theirWins) > 1) // they can win in two places and I can only block one
+        {
+            return -(WIN_SCORE - (moveCount + 2));
+        }
+        if (board.isFull())
+        {
+            return 0;
+        }
+        if (depth <= 0)
+        {
+            return (evaluator != null) ? evaluator.score(red) : 0;
+        }
+
+        long hash = board.getCanonicalHash(red);
+        boolean mirrored = (hash != board.getHash(red)); // the entry's column is the mirror image's
+        int tableMove = TranspositionTable.NO_MOVE;
+        long entry = table.probe(hash);
+        if (entry != 0)
+        {
+            tableHits++;
+        }
+        else
+        {
+            tableMisses++;
+        }
+        if (moveCount == rootMoveCount)
+        {
+            tableMove = rootBestColumn; // the best column of the last depth goes first
+        }
+        else if (entry != 0)
+        {
+            tableMove = TranspositionTable.moveOf(entry);
+            if (mirrored && tableMove >= 0)
+            {
+                tableMove = board.mirrorColumn(tableMove);
+            }
+            if (TranspositionTable.depthOf(entry) >= depth)
+            {
+                int score = TranspositionTable.scoreOf(entry);
+                int bound = TranspositionTable.boundOf(entry);
+                if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha))
+                {
+                    return score;
+                }
+            }
+        }
+
+        int ply = moveCount - rootMoveCount;
+        int[] moves = moveBuffers[ply];
+        int candidateCount = orderMoves(red, ply, tableMove, theirWins, moves, moveKeys[ply]);
+        int originalAlpha = alpha;
+        int nodeBestScore = -WIN_SCORE;
+        int bestMove = TranspositionTable.NO_MOVE;
+        for (int i = 0; i < candidateCount; i++)
+        {
+            int column = moves[i];
+            int row = board.getHeight(column);
+            board.play(column, red);
+            if (evaluator != null)
+            {
+                evaluator.play(column, row, red);
+            }
+            int score = -negamax(!red, depth - 1, -beta, -alpha);
+            board.undo(column);
+            if (evaluator != null)
+            {
+                evaluator.undo(column, row, red);
+            }
+            if (timedOut)
+            {
+                return 0;
+            }
+            if (score > nodeBestScore)
+            {
+                nodeBestScore = score;
+                bestMove = column;
+                if (moveCount == rootMoveCount)
+                {
+                    rootBestColumn = column;
+                }
+            }
+            if (score > alpha)
+            {
+                alpha = score;
+            }
+            if (alpha >= beta)
+            {
+                recordCutoff(red, ply, column, depth);
+                break;
+            }
+        }
+
+        int bound = TranspositionTable.EXACT;
+        if (nodeBestScore <= originalAlpha)
+        {
+            bound = TranspositionTable.UPPER_BOUND;
+        }
+        else if (nodeBestScore >= beta)
+        {
+            bound = TranspositionTable.LOWER_BOUND;
+        }
+        table.store(hash, depth, bound, nodeBestScore, (mirrored && bestMove >= 0) ? board.mirrorColumn(bestMove) : bestMove);
+        return nodeBestScore;
+    }
+
+    /**
+     * Fills a buffer with the columns worth searching, in the order to search them.
+     *
+     * @param tableMove the column to search first; -1 if there is none
+     * @param theirWins the opponent's playable winning cells; if there are any, only the
+     *        column that blocks them is worth searching
+     * @return the number of columns in the buffer
+     */
+    private int orderMoves(boolean red, int ply, int tableMove, long theirWins, int[] columns, int[] keys)
+    {
+        int count = 0;
+        for (int i = 0; i < columnOrder.length; i++)
+        {
+            int column = columnOrder[i];
+            if (!board.canPlay(column) || (theirWins != 0 && (theirWins & board.columnMask(column)) == 0))
+            {
+                continue;
+            }
+            int key;
+            if (column == tableMove)
+            {
+                key = TABLE_MOVE_KEY;
+            }
+            else
+            {
+                key = 0;
+                long cell = board.cellBit(column, board.getHeight(column));
+                if ((moveOrdering & THREAT_ORDERING) != 0)
+                {
+                    key += THREAT_KEY * Long.bitCount(board.winningCellsWith(cell, red));
+                }
+                int cellIndex = Long.numberOfTrailingZeros(cell);
+                if ((moveOrdering & KILLER_MOVES) != 0 && cellIndex == killers[2 * ply])
+                {
+                    key += KILLER_KEY + 1;
+                }
+                else if ((moveOrdering & KILLER_MOVES) != 0 && cellIndex == killers[2 * ply + 1])
+                {
+                    key += KILLER_KEY;
+                }
+                else if ((moveOrdering & HISTORY_HEURISTIC) != 0)
+                {
+                    key += history[historyIndex(red, cell)];
+                }
+            }
+
+            int j = count;
+            while (j > 0 && keys[j - 1] < key) // stable, so center order breaks ties
+            {
+                columns[j] = columns[j - 1];
+                keys[j] = keys[j - 1];
+                j--;
+            }
+            columns[j] = column;
+            keys[j] = key;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Remembers a move that caused a beta cutoff, as a killer of its ply and in the history.
+     */
+    private void recordCutoff(boolean red, int ply, int column, int depth)
+    {
+        long cell = board.cellBit(column, board.getHeight(column));
+        int cellIndex = Long.numberOfTrailingZeros(cell);
+        if (killers[2 * ply] != cellIndex)
+        {
+            killers[2 * ply + 1] = killers[2 * ply];
+            killers[2 * ply] = cellIndex;
+        }
+        int index = historyIndex(red, cell);
+        history[index] += depth * depth; // cutoffs far from the leaves save the most
+        if (history[index] > MAX_HISTORY)
+        {
+            for (int i = 0; i < history.length; i++)
+            {
+                history[i] >>= 1;
+            }
+        }
+    }
+
+    private static int historyIndex(boolean red, long cell)
+    {
+        return (red ? 0 : MAX_BOARD_SLOTS) + Long.numberOfTrailingZeros(cell);
+    }
+
+    /**
+     * Returns the column the player must play: their own winning column, or the opponent's
+     * winning column if they have to block it.
+     *
+     * @return the forced column; -1 if the player has a free choice
+     */
+    private int forcedColumn(boolean red)
+    {
+        int column = board.findWinningColumn(red);
+        if (column == -1)
+        {
+            column = board.findWinningColumn(!red);
+        }
+        return column;
+    }
+
+    /**
+     * Returns every column of a board, starting at the center and working outwards.
+     *
+     * @param columnCount the number of columns on the board
+     */
+    public static int[] centerFirstOrder(int columnCount)
+    {
+        int[] order = new int[columnCount];
+        for (int i = 0; i < columnCount; i++)
+        {
+            // insertion sort by distance from the center; ties keep the leftmost column first
+            int j = i;
+            while (j > 0 && distanceFromCenter(order[j - 1], columnCount) > distanceFromCenter(i, columnCount))
+            {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    private static int distanceFromCenter(int column, int columnCount)
+    {
+        return Math.abs(2 * column - (columnCount - 1)); // doubled so that even boards stay whole
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * A read-only table of precomputed best columns for early positions, kept on disk and
+ * memory-mapped.
+ *
+ * The file is a 16-byte header (magic number, column count, row count, record count) followed
+ * by fixed-size records sorted by position hash. Each record holds the Zobrist hash of a
+ * position with its player to move, the search score of the position, the best column and the
+ * depth it was searched to. Books hold one of each position and its mirror image, the one whose
+ * hash is Connect4Bitboard.getCanonicalHash(); readers look positions up by that hash and
+ * mirror the column back when it is not the position's own hash. Lookups binary-search the mapped
+ * file in place, so nothing is read into the heap and every agent in the JVM shares the same
+ * page-cached copy through open().
+ *
+ * Books are written by OpeningBookGenerator.
+ */
+public class OpeningBook
+{
+    static final int MAGIC = 0x43344243; // "C4BC"
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 12; // long hash, short score, byte column, byte depth
+    static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+
+    private static final HashMap<Path, OpeningBook> OPEN_BOOKS = new HashMap<Path, OpeningBook>();
+
+    private final MappedByteBuffer records;
+    private final int columnCount;
+    private final int rowCount;
+    private final int recordCount;
+
+    private OpeningBook(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()); // stays valid after the channel closes
+        }
+        records.order(BYTE_ORDER);
+        if (records.capacity() < HEADER_BYTES || records.getInt(0) != MAGIC)
+        {
+            throw new IOException(file + " is not an opening book");
+        }
+        columnCount = records.getInt(4);
+        rowCount = records.getInt(8);
+        recordCount = records.getInt(12);
+        if (records.capacity() < HEADER_BYTES + (long) recordCount * RECORD_BYTES)
+        {
+            throw new IOException(file + " is truncated");
+        }
+    }
+
+    /**
+     * Returns the book stored in a file, mapping it the first time it is asked for and sharing
+     * that mapping with every later caller.
+     *
+     * @param file the book file
+     * @return the book
+     * @throws UncheckedIOException if the file cannot be read or is not a book
+     */
+    public static synchronized OpeningBook open(Path file)
+    {
+        Path key = file.toAbsolutePath().normalize();
+        OpeningBook book = OPEN_BOOKS.get(key);
+        if (book == null)
+        {
+            try
+            {
+                book = new OpeningBook(key);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            OPEN_BOOKS.put(key, book);
+        }
+        return book;
+    }
+
+    /**
+     * Returns the best column the book holds for a position.
+     *
+     * @param hash the position's hash, from Connect4Bitboard.getCanonicalHash
+     * @return the best column, for the position whose own hash that is; -1 if the position is
+     *         not in the book
+     */
+    public int lookupColumn(long hash)
+    {
+        int index = find(hash);
+        return (index < 0) ? -1 : records.get(recordOffset(index) + 10);
+    }
+
+    /**
+     * Returns the search score the book holds for a position, from the point of view of the
+     * player to move.
+     *
+     * @param hash the position's hash, from Connect4Bitboard.getCanonicalHash
+     * @param missing the value to return if the position is not in the book
+     */
+    public int lookupScore(long hash, int missing)
+    {
+        int index = find(hash);
+        return (index < 0) ? missing : records.getShort(recordOffset(index) + 8);
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int size()
+    {
+        return recordCount;
+    }
+
+    private int find(long hash)
+    {
+        int low = 0;
+        int high = recordCount - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            long middleHash = records.getLong(recordOffset(middle)); // absolute reads, safe from any thread
+            if (middleHash < hash)
+            {
+                low = middle + 1;
+            }
+            else if (middleHash > hash)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private static int recordOffset(int index)
+    {
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+}
@@ -0,0 +1,179 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+
+/**
+ * Builds an OpeningBook file by searching every position of the first few moves of the game.
+ *
+ * Usage: java OpeningBookGenerator &lt;book file&gt; [plies] [millis per position] [columns] [rows] [eval]
+ *
+ * Every position reachable in at most the given number of plies, with either player to move,
+ * is searched for the given time, and its best column and score are written to the book. Of a
+ * position and its mirror image only the one with the canonical hash is written (see
+ * Connect4Bitboard.getCanonicalHash), which the book's readers mirror back.
+ * Positions that are already won, and positions whose search was not able to finish even the
+ * first depth, are left out.
+ *
+ * Positions the search cannot see to the end of are scored with the same EvaluationWeights
+ * MyAgent searches with, EvaluationWeights.DEFAULT unless eval names "none" or a weights file;
+ * a book built without them would hold whichever column the move ordering tried first.
+ */
+public class OpeningBookGenerator
+{
+    public static final int DEFAULT_PLIES = 4;
+    public static final long DEFAULT_MILLIS_PER_POSITION = 500;
+    public static final long TABLE_BYTES = 256L * 1024 * 1024;
+
+    private final Connect4Bitboard board;
+    private final TranspositionTable table;
+    private final NegamaxSearch search;
+    private final long millisPerPosition;
+    private final HashSet<Long> visited = new HashSet<Long>();
+
+    private long[] hashes = new long[1024];
+    private short[] scores = new short[1024];
+    private byte[] columns = new byte[1024];
+    private byte[] depths = new byte[1024];
+    private int count;
+
+    public OpeningBookGenerator(int columnCount, int rowCount, long millisPerPosition)
+    {
+        this.board = new Connect4Bitboard(columnCount, rowCount);
+        this.table = new TranspositionTable(TABLE_BYTES);
+        this.search = new NegamaxSearch(board, table);
+        this.search.setEvaluationWeights(EvaluationWeights.DEFAULT);
+        this.millisPerPosition = millisPerPosition;
+    }
+
+    /**
+     * Sets the weights positions the search cannot see to the end of are scored with; see
+     * NegamaxSearch.setEvaluationWeights.
+     *
+     * @param weights the weights to use; null to score every undecided position 0
+     */
+    public void setEvaluationWeights(EvaluationWeights weights)
+    {
+        search.setEvaluationWeights(weights);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.err.println("usage: java OpeningBookGenerator <book file> [plies] [millis per position] [columns] [rows] [eval]");
+            System.exit(2);
+        }
+        int plies = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PLIES;
+        long millis = (args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_MILLIS_PER_POSITION;
+        int columnCount = (args.length > 3) ? Integer.parseInt(args[3]) : 7;
+        int rowCount = (args.length > 4) ? Integer.parseInt(args[4]) : 6;
+
+        OpeningBookGenerator generator = new OpeningBookGenerator(columnCount, rowCount, millis);
+        if (args.length > 5)
+        {
+            generator.setEvaluationWeights(args[5].equals("none") ? null
+                : args[5].equals("default") ? EvaluationWeights.DEFAULT
+                : EvaluationWeights.load(java.nio.file.Paths.get(args[5])));
+        }
+        generator.searchPositions(true, plies);
+        generator.write(args[0]);
+        System.out.println("Wrote " + generator.count + " positions to " + args[0]);
+    }
+
+    /**
+     * Searches the current position and every position reachable from it in the given number
+     * of plies.
+     *
+     * @param red true if Red is to move
+     * @param pliesLeft how many more tokens may be played
+     */
+    void searchPositions(boolean red, int pliesLeft)
+    {
+        long hash = board.getCanonicalHash(red);
+        if (!visited.add(hash))
+        {
+            return; // reached before through another move order, or its mirror image was
+        }
+        if (board.hasFourInARow(board.getMask(!red)) || board.isFull())
+        {
+            return;
+        }
+
+        int column = search.findBestColumn(red, MyAgent.DEFAULT_SEARCH_DEPTH, System.nanoTime() + millisPerPosition * 1000000L);
+        if (column != -1 && search.getCompletedDepth() > 0)
+        {
+            add(hash, search.getBestScore(), (hash != board.getHash(red)) ? board.mirrorColumn(column) : column,
+                search.getCompletedDepth());
+        }
+
+        if (pliesLeft > 0)
+        {
+            for (int c = 0; c < board.getColumnCount(); c++)
+            {
+                if (board.canPlay(c))
+                {
+                    board.play(c, red);
+                    searchPositions(!red, pliesLeft - 1);
+                    board.undo(c);
+                }
+            }
+        }
+    }
+
+    private void add(long hash, int score, int column, int depth)
+    {
+        if (count == hashes.length)
+        {
+            hashes = Arrays.copyOf(hashes, count * 2);
+            scores = Arrays.copyOf(scores, count * 2);
+            columns = Arrays.copyOf(columns, count * 2);
+            depths = Arrays.copyOf(depths, count * 2);
+        }
+        hashes[count] = hash;
+        scores[count] = (short) score;
+        columns[count] = (byte) column;
+        depths[count] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        count++;
+    }
+
+    /**
+     * Writes the positions searched so far to a book file, sorted by hash.
+     *
+     * @param file the file to write
+     */
+    void write(String file) throws IOException
+    {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++)
+        {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() // the order OpeningBook searches in
+        {
+            public int compare(Integer a, Integer b)
+            {
+                return Long.compare(hashes[a], hashes[b]);
+            }
+        });
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+        {
+            out.writeInt(OpeningBook.MAGIC); // DataOutputStream is big-endian, as OpeningBook reads
+            out.writeInt(board.getColumnCount());
+            out.writeInt(board.getRowCount());
+            out.writeInt(count);
+            for (int i = 0; i < count; i++)
+            {
+                int record = order[i];
+                out.writeLong(hashes[record]);
+                out.writeShort(scores[record]);
+                out.writeByte(columns[record]);
+                out.writeByte(depths[record]);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs several NegamaxSearch threads on the same position at once ("Lazy SMP").
+ *
+ * Every thread searches its own copy of the board but all of them share one
+ * TranspositionTable, so each thread picks up the results the others have already stored and
+ * the main thread reaches a given depth sooner. Helper threads start deepening at different
+ * depths so that they spread out over the tree instead of searching it in step.
+ *
+ * Only the main thread's answer is used. With one thread no helper threads are started and
+ * the result is exactly that of a plain NegamaxSearch, which keeps single-threaded play
+ * repeatable.
+ *
+ * The helper threads are started once and then parked between searches. Handing a search to
+ * them and collecting them afterwards only writes a few volatile fields, so a search allocates
+ * nothing.
+ */
+public class ParallelSearch
+{
+    private final NegamaxSearch mainSearch;
+    private final Connect4Bitboard mainBoard;
+    private final Helper[] helpers;
+
+    private volatile Thread caller; // the thread waiting for the helpers to finish
+    private volatile boolean shutdown;
+    private int round;
+
+    /**
+     * Constructs a parallel search around an existing single-threaded search.
+     *
+     * @param mainSearch the search the calling thread runs
+     * @param mainBoard the board mainSearch searches
+     * @param table the table mainSearch uses, which the helper threads share
+     * @param threadCount the total number of searching threads, including the calling thread
+     */
+    public ParallelSearch(NegamaxSearch mainSearch, Connect4Bitboard mainBoard, TranspositionTable table, int threadCount)
+    {
+        this.mainSearch = mainSearch;
+        this.mainBoard = mainBoard;
+        helpers = new Helper[Math.max(0, threadCount - 1)];
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i] = new Helper(new Connect4Bitboard(mainBoard.getColumnCount(), mainBoard.getRowCount(), mainBoard.getConnectLength()), table);
+            helpers[i].search.setFirstDepth(1 + (i + 1) % 2); // every other helper skips a depth
+            helpers[i].thread = new Thread(helpers[i], "MyAgent search helper " + (i + 1));
+            helpers[i].thread.setDaemon(true);
+            helpers[i].thread.start();
+        }
+    }
+
+    /**
+     * Searches the current position of the main board with every thread and returns the main
+     * thread's best column. Returns only once all helper threads have stopped.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     * @param maxDepth the most moves to look ahead
+     * @param deadlineNanos the System.nanoTime() by which the search must return
+     * @return the best column found; -1 if the board is full
+     */
+    public int findBestColumn(boolean red, int maxDepth, long deadlineNanos)
+    {
+        caller = Thread.currentThread();
+        round++;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            Helper helper = helpers[i];
+            helper.board.copyFrom(mainBoard);
+            helper.red = red;
+            helper.maxDepth = maxDepth;
+            helper.deadlineNanos = deadlineNanos;
+            helper.search.setMoveOrdering(mainSearch.getMoveOrdering());
+            helper.search.setEvaluationWeights(mainSearch.getEvaluationWeights());
+            helper.search.clearStop(); // a stop() from the last round may have come after the helper finished
+            helper.requestedRound = round; // volatile write publishes the fields above
+            LockSupport.unpark(helper.thread);
+        }
+
+        int bestColumn = mainSearch.findBestColumn(red, maxDepth, deadlineNanos);
+
+        for (int i = 0; i < helpers.length; i++)
+        {
+            if (helpers[i].finishedRound != round)
+            {
+                helpers[i].search.stop();
+            }
+        }
+        for (int i = 0; i < helpers.length; i++)
+        {
+            while (helpers[i].finishedRound != round && !shutdown) // helpers must be done with the table before the next search
+            {
+                LockSupport.park(this);
+            }
+        }
+        return bestColumn;
+    }
+
+    /**
+     * Returns the number of positions visited by every thread in the last search.
+     */
+    public long getNodeCount()
+    {
+        long nodes = mainSearch.getNodeCount();
+        for (int i = 0; i < helpers.length; i++)
+        {
+            nodes += helpers[i].search.getNodeCount();
+        }
+        return nodes;
+    }
+
+    /**
+     * Returns the total number of searching threads, including the calling thread.
+     */
+    public int getThreadCount()
+    {
+        return helpers.length + 1;
+    }
+
+    /**
+     * Stops the helper threads. The search must not be used afterwards.
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+        for (int i = 0; i < helpers.length; i++)
+        {
+            helpers[i].search.stop();
+            LockSupport.unpark(helpers[i].thread);
+        }
+    }
+
+    /**
+     * One helper thread, with its own board and search, waiting for rounds to search.
+     */
+    private final class Helper implements Runnable
+    {
+        final Connect4Bitboard board;
+        final NegamaxSearch search;
+        Thread thread;
+
+        // what to search; written by the caller before it bumps requestedRound
+        boolean red;
+        int maxDepth;
+        long deadlineNanos;
+
+        volatile int requestedRound;
+        volatile int finishedRound;
+
+        Helper(Connect4Bitboard board, TranspositionTable table)
+        {
+            this.board = board;
+            this.search = new NegamaxSearch(board, table);
+            this.search.setAgesTable(false); // the main search starts the generation
+        }
+
+        public void run()
+        {
+            while (!shutdown)
+            {
+                int requested = requestedRound;
+                if (requested == finishedRound)
+                {
+                    LockSupport.park(this);
+                    continue;
+                }
+                try
+                {
+                    search.findBestColumn(red, maxDepth, deadlineNanos);
+                }
+                catch (RuntimeException e)
+                {
+                    // a helper that failed only cost us its share of the work
+                }
+                finishedRound = requested;
+                LockSupport.unpark(caller);
+            }
+        }
+    }
+}
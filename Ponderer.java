@@ -0,0 +1,143 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Searches on a background thread while the opponent is thinking about their move
+ * ("pondering").
+ *
+ * Once the agent has placed its token, ponder() hands a copy of the board, with the opponent to
+ * move, to a thread that searches it until it is stopped or has searched as deep as it may. The
+ * opponent's replies are searched best-looking first, so the likely replies get the deepest
+ * look, and every result goes into the transposition table the agent's own search uses. When
+ * the agent is next asked to move, the position after the opponent's reply has usually been
+ * searched a few moves deep already, and the agent's search starts from those results.
+ *
+ * stop() returns only once the thread has left its search, which takes at most one clock
+ * check's worth of nodes, so the agent's own search never shares the CPU with it. The pondering
+ * search does not start a new generation of the table: its results count as part of the
+ * agent's last move, and the agent's next search starts the next generation as usual.
+ *
+ * As with the helper threads of ParallelSearch, the thread is started once and parked between
+ * ponders, so pondering allocates nothing.
+ */
+public class Ponderer
+{
+    private final Connect4Bitboard board;
+    private final NegamaxSearch search;
+    private final Thread thread;
+
+    // what to ponder; written by the caller before it bumps requestedRound
+    private boolean red;
+    private int maxDepth;
+
+    private volatile Thread caller; // the thread waiting for the ponder to stop
+    private volatile boolean shutdown;
+    private volatile int requestedRound;
+    private volatile int finishedRound;
+    private int round;
+
+    /**
+     * Constructs a ponderer for boards of one size and starts its thread, parked until the
+     * first ponder.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @param table the table to keep search results in; the agent's own search's table
+     */
+    public Ponderer(int columnCount, int rowCount, int connectLength, TranspositionTable table)
+    {
+        board = new Connect4Bitboard(columnCount, rowCount, connectLength);
+        search = new NegamaxSearch(board, table);
+        search.setAgesTable(false);
+        thread = new Thread(this::run, "MyAgent ponder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Starts searching a position in the background. A ponder that is still running is
+     * stopped first.
+     *
+     * @param position the position to search; copied, so it may change while the search runs
+     * @param red true if Red is to move in the position, false if Yellow is
+     * @param maxDepth the most moves to look ahead
+     * @param moveOrdering the move ordering heuristics to search with; see NegamaxSearch
+     * @param weights the weights to score undecided positions with; null to score them 0
+     */
+    public void ponder(Connect4Bitboard position, boolean red, int maxDepth, int moveOrdering, EvaluationWeights weights)
+    {
+        stop();
+        board.copyFrom(position);
+        this.red = red;
+        this.maxDepth = maxDepth;
+        search.setMoveOrdering(moveOrdering);
+        search.setEvaluationWeights(weights);
+        search.clearStop(); // a stop() that came just after the last ponder finished must not cut this one short
+        round++;
+        requestedRound = round; // volatile write publishes the fields above
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the running ponder, if any, and returns once the thread has stopped using the
+     * table.
+     */
+    public void stop()
+    {
+        if (finishedRound == round)
+        {
+            return;
+        }
+        caller = Thread.currentThread();
+        search.stop();
+        while (finishedRound != round && !shutdown)
+        {
+            LockSupport.park(this);
+        }
+    }
+
+    /**
+     * Returns the number of positions visited by the last ponder that has stopped.
+     */
+    public long getNodeCount()
+    {
+        return search.getNodeCount();
+    }
+
+    /**
+     * Stops the thread. The ponderer must not be used afterwards.
+     */
+    public void shutdown()
+    {
+        stop();
+        shutdown = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void run()
+    {
+        while (!shutdown)
+        {
+            int requested = requestedRound;
+            if (requested == finishedRound)
+            {
+                LockSupport.park(this);
+                continue;
+            }
+            try
+            {
+                search.findBestColumn(red, maxDepth, Long.MAX_VALUE);
+            }
+            catch (RuntimeException e)
+            {
+                // a failed ponder only costs the head start it would have given
+            }
+            finishedRound = requested;
+            Thread waiting = caller;
+            if (waiting != null)
+            {
+                LockSupport.unpark(waiting);
+            }
+        }
+    }
+}
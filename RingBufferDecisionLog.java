@@ -0,0 +1,165 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A DecisionListener that writes decisions to a stream from its own background thread.
+ *
+ * Game threads only copy the decision into a fixed ring of primitive slots, which takes no lock
+ * and allocates nothing, so any number of agents can share one log. A daemon thread drains the
+ * ring and formats the lines. If the game threads get a whole ring ahead of the writer, further
+ * decisions are dropped and counted rather than making a game thread wait.
+ */
+public class RingBufferDecisionLog implements DecisionListener
+{
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final long IDLE_PARK_NANOS = 1000000L;
+    private static final DecisionReason[] REASONS = DecisionReason.values();
+
+    private final PrintStream out;
+    private final int mask;
+
+    // one decision per slot, split over primitive arrays so recording one allocates nothing
+    private final int[] columns;
+    private final int[] reasons;
+    private final int[] depths;
+    private final long[] elapsed;
+    private final AtomicLongArray published; // sequence number + 1 of the decision in each slot
+
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long readSequence;
+    private volatile boolean closed;
+    private final Thread writer;
+
+    /**
+     * Constructs a log with the default capacity and starts its writer thread.
+     *
+     * @param out the stream to write decisions to
+     */
+    public RingBufferDecisionLog(PrintStream out)
+    {
+        this(out, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a log and starts its writer thread.
+     *
+     * @param out the stream to write decisions to
+     * @param capacity how many decisions may wait to be written; rounded up to a power of two
+     */
+    public RingBufferDecisionLog(PrintStream out, int capacity)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.out = out;
+        this.mask = size - 1;
+        columns = new int[size];
+        reasons = new int[size];
+        depths = new int[size];
+        elapsed = new long[size];
+        published = new AtomicLongArray(size);
+
+        writer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                drainUntilClosed();
+            }
+        }, "MyAgent decision log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public void onDecision(int column, DecisionReason reason, int searchDepth, long elapsedNanos)
+    {
+        long sequence;
+        do
+        {
+            sequence = nextSequence.get();
+            if (sequence - readSequence > mask)
+            {
+                dropped.incrementAndGet(); // the ring is full
+                return;
+            }
+        }
+        while (!nextSequence.compareAndSet(sequence, sequence + 1));
+
+        int slot = (int) sequence & mask;
+        columns[slot] = column;
+        reasons[slot] = reason.ordinal();
+        depths[slot] = searchDepth;
+        elapsed[slot] = elapsedNanos;
+        published.lazySet(slot, sequence + 1); // hands the slot to the writer
+    }
+
+    /**
+     * Returns how many decisions were dropped because the ring was full.
+     */
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Writes out the decisions still waiting and stops the writer thread.
+     */
+    public void close()
+    {
+        closed = true;
+        LockSupport.unpark(writer);
+        try
+        {
+            writer.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        out.flush();
+    }
+
+    private void drainUntilClosed()
+    {
+        while (true)
+        {
+            boolean wasClosed = closed; // read before draining so nothing recorded before close() is missed
+            if (drain() == 0)
+            {
+                if (wasClosed)
+                {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes every decision that is ready, in order.
+     *
+     * @return the number of decisions written
+     */
+    private int drain()
+    {
+        int written = 0;
+        long sequence = readSequence;
+        while (true)
+        {
+            int slot = (int) sequence & mask;
+            if (published.get(slot) != sequence + 1)
+            {
+                break; // not recorded yet
+            }
+            out.println("decision column=" + columns[slot]
+                + " reason=" + REASONS[reasons[slot]]
+                + " depth=" + depths[slot]
+                + " micros=" + (elapsed[slot] / 1000));
+            sequence++;
+            readSequence = sequence; // frees the slot for the game threads
+            written++;
+        }
+        return written;
+    }
+}
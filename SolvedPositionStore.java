@@ -0,0 +1,591 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A store of positions proven won, lost or drawn in earlier games, kept on disk so that it
+ * outlives the JVM, and shared by every agent in the JVM through open().
+ *
+ * The store is two files next to each other:
+ * - name.log, the append-only log: a 16-byte header (magic number, column count, row count,
+ *   line length) and then one 16-byte record per position in the order they were proven: the
+ *   canonical hash of the position with its player to move (see
+ *   Connect4Bitboard.getCanonicalHash, which also covers its mirror image), its score on the
+ *   NegamaxSearch scale, the best column of the position with that hash, and a CRC32 of the
+ *   rest of the record.
+ * - name.idx, a snapshot of the index: which record holds each hash, for the first part of the
+ *   log, so that opening a large store does not read the whole log.
+ *
+ * In memory the index is a compact open-addressing table of hashes and record numbers, twelve
+ * bytes a slot; it is kept at most half full and doubled when it would fill past that, so it
+ * costs 24 to 48 bytes a position. The records themselves are read from the log when asked for and kept in a
+ * least-recently-used cache of bounded size, split into stripes that are locked separately so
+ * that agents on many threads rarely wait for each other.
+ *
+ * Writes are crash-safe: a record is only ever appended, and a crash part-way through writing
+ * one leaves a record whose checksum does not match, which the next open() cuts off. The index
+ * snapshot is written to a temporary file and moved into place in one step, and is ignored if
+ * it does not match the log. A crash may lose the records written since the last flush(), but
+ * never leaves a store that cannot be opened. One process at a time may have a store open.
+ *
+ * Only flush() and close() write the index snapshot. Whoever opens a store should call one of
+ * them from time to time, and when done with it, or the next start reads the whole log again.
+ * So that a JVM which simply exits still leaves a snapshot behind, open() also flushes every
+ * store still open when the JVM shuts down normally.
+ */
+public class SolvedPositionStore
+{
+    public static final int DEFAULT_CACHE_ENTRIES = 1 << 16;
+
+    static final int LOG_MAGIC = 0x43345350; // "C4SP"
+    static final int INDEX_MAGIC = 0x43345349; // "C4SI"
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 16; // long hash, short score, byte column, byte unused, int CRC32
+    static final int INDEX_HEADER_BYTES = 24; // int magic, int entry count, long log bytes covered, long CRC32 of the entries
+    static final int INDEX_ENTRY_BYTES = 12; // long hash, int record number
+    static final ByteOrder BYTE_ORDER = ByteOrder.BIG_ENDIAN;
+
+    private static final int CACHE_STRIPES = 16;
+    private static final HashMap<Path, SolvedPositionStore> OPEN_STORES = new HashMap<Path, SolvedPositionStore>();
+    private static boolean flushAtExit; // whether the shutdown hook has been added; guarded by SolvedPositionStore.class
+
+    private final Path key;
+    private final Path logFile;
+    private final Path indexFile;
+    private final FileChannel log;
+    private final FileLock lock;
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final Cache[] cache;
+
+    // the index; guarded by this
+    private long[] hashes;
+    private int[] records; // record number + 1; 0 marks an empty slot
+    private int recordCount;
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_BYTES).order(BYTE_ORDER);
+    private final CRC32 writeChecksum = new CRC32();
+
+    private SolvedPositionStore(Path key, int columnCount, int rowCount, int connectLength, int cacheEntries) throws IOException
+    {
+        this.key = key;
+        this.logFile = key.resolveSibling(key.getFileName() + ".log");
+        this.indexFile = key.resolveSibling(key.getFileName() + ".idx");
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        this.cache = new Cache[CACHE_STRIPES];
+        for (int i = 0; i < cache.length; i++)
+        {
+            cache[i] = new Cache(Math.max(1, cacheEntries / CACHE_STRIPES));
+        }
+        hashes = new long[16];
+        records = new int[16];
+
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            lock = log.tryLock();
+            if (lock == null)
+            {
+                throw new IOException(logFile + " is open in another process");
+            }
+            if (log.size() == 0)
+            {
+                writeHeader();
+            }
+            else
+            {
+                checkHeader();
+            }
+            long covered = loadIndex();
+            replayLog(covered);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the store kept under a name, opening or creating it the first time it is asked
+     * for and sharing it with every later caller.
+     *
+     * @param name the path of the store without its .log and .idx extensions
+     * @param columnCount the number of columns of the board the store is for
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @return the store
+     * @throws UncheckedIOException if the files cannot be read or written or are not a store
+     * @throws IllegalArgumentException if the store is for another board or line length
+     */
+    public static SolvedPositionStore open(Path name, int columnCount, int rowCount, int connectLength)
+    {
+        return open(name, columnCount, rowCount, connectLength, DEFAULT_CACHE_ENTRIES);
+    }
+
+    /**
+     * Returns the store kept under a name, as open(name, columnCount, rowCount, connectLength)
+     * does, with a given bound on the positions kept in memory. The bound only applies when
+     * the store is first opened.
+     *
+     * @param cacheEntries the most records kept in memory
+     */
+    public static synchronized SolvedPositionStore open(Path name, int columnCount, int rowCount, int connectLength, int cacheEntries)
+    {
+        Path key = name.toAbsolutePath().normalize();
+        SolvedPositionStore store = OPEN_STORES.get(key);
+        if (store == null)
+        {
+            try
+            {
+                store = new SolvedPositionStore(key, columnCount, rowCount, connectLength, cacheEntries);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            OPEN_STORES.put(key, store);
+            if (!flushAtExit)
+            {
+                Runtime.getRuntime().addShutdownHook(new Thread(SolvedPositionStore::flushOpenStores, "SolvedPositionStore flush"));
+                flushAtExit = true;
+            }
+        }
+        if (store.columnCount != columnCount || store.rowCount != rowCount || store.connectLength != connectLength)
+        {
+            throw new IllegalArgumentException(name + " holds positions of a " + store.columnCount + "x" + store.rowCount
+                + " board with lines of " + store.connectLength);
+        }
+        return store;
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getConnectLength()
+    {
+        return connectLength;
+    }
+
+    /**
+     * Returns the number of positions in the store.
+     */
+    public synchronized int size()
+    {
+        return recordCount;
+    }
+
+    /**
+     * Returns the best column of a stored position.
+     *
+     * @param hash the position's hash, from Connect4Bitboard.getCanonicalHash
+     * @return the best column; -1 if the position is not in the store
+     */
+    public int lookupColumn(long hash)
+    {
+        long record = lookup(hash);
+        return (record == 0) ? -1 : columnOf(record);
+    }
+
+    /**
+     * Adds a proven position to the store, unless it is there already.
+     *
+     * @param hash the position's hash, from Connect4Bitboard.getCanonicalHash
+     * @param score the proven score, from the point of view of the player to move
+     * @param column the best column, for the position whose own hash that is
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    public void record(long hash, int score, int column)
+    {
+        long packed = pack(score, column);
+        synchronized (this)
+        {
+            if (records[findSlot(hash)] != 0)
+            {
+                return;
+            }
+            writeBuffer.clear();
+            writeBuffer.putLong(hash).putShort((short) score).put((byte) column).put((byte) 0);
+            writeChecksum.reset();
+            writeChecksum.update(writeBuffer.array(), 0, RECORD_BYTES - 4);
+            writeBuffer.putInt((int) writeChecksum.getValue());
+            writeBuffer.flip();
+            try
+            {
+                long position = HEADER_BYTES + (long) recordCount * RECORD_BYTES;
+                while (writeBuffer.hasRemaining())
+                {
+                    position += log.write(writeBuffer, position);
+                }
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            insert(hash, recordCount);
+            recordCount++;
+        }
+        cacheOf(hash).put(hash, packed);
+    }
+
+    /**
+     * Forces the records written so far to disk and writes a new snapshot of the index.
+     *
+     * @throws UncheckedIOException if the files cannot be written
+     */
+    public synchronized void flush()
+    {
+        try
+        {
+            log.force(false);
+            writeIndex();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Flushes every store still open, as the JVM shuts down.
+     */
+    private static void flushOpenStores()
+    {
+        SolvedPositionStore[] stores;
+        synchronized (SolvedPositionStore.class)
+        {
+            stores = OPEN_STORES.values().toArray(new SolvedPositionStore[0]);
+        }
+        for (int i = 0; i < stores.length; i++)
+        {
+            try
+            {
+                stores[i].flush();
+            }
+            catch (UncheckedIOException e)
+            {
+                // closed meanwhile, or the disk failed; the next open() reads the log instead
+            }
+        }
+    }
+
+    /**
+     * Flushes the store and closes its files. Every agent using it must be done with it; a
+     * later open() of the same name opens it afresh.
+     */
+    public void close()
+    {
+        synchronized (SolvedPositionStore.class)
+        {
+            OPEN_STORES.remove(key);
+        }
+        synchronized (this)
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                try
+                {
+                    log.close(); // releases the lock too
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the packed score and column of a position, from the cache or else from the log.
+     *
+     * @return the packed record; 0 if the position is not in the store
+     */
+    private long lookup(long hash)
+    {
+        Cache stripe = cacheOf(hash);
+        long record = stripe.get(hash);
+        if (record != 0)
+        {
+            return record;
+        }
+        int recordNumber;
+        synchronized (this)
+        {
+            recordNumber = records[findSlot(hash)] - 1;
+        }
+        if (recordNumber < 0)
+        {
+            return 0L;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES).order(BYTE_ORDER); // only on a cache miss
+        try
+        {
+            readFully(log, buffer, HEADER_BYTES + (long) recordNumber * RECORD_BYTES);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        record = pack(buffer.getShort(8), buffer.get(10));
+        stripe.put(hash, record);
+        return record;
+    }
+
+    private void writeHeader() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+        header.putInt(LOG_MAGIC).putInt(columnCount).putInt(rowCount).putInt(connectLength).flip();
+        log.write(header, 0);
+        log.force(true);
+    }
+
+    private void checkHeader() throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(BYTE_ORDER);
+        readFully(log, header, 0);
+        if (header.position() < HEADER_BYTES || header.getInt(0) != LOG_MAGIC)
+        {
+            throw new IOException(logFile + " is not a solved position store");
+        }
+        if (header.getInt(4) != columnCount || header.getInt(8) != rowCount || header.getInt(12) != connectLength)
+        {
+            throw new IllegalArgumentException(logFile + " holds positions of a " + header.getInt(4) + "x" + header.getInt(8)
+                + " board with lines of " + header.getInt(12));
+        }
+    }
+
+    /**
+     * Loads the index snapshot, if there is one that matches the log.
+     *
+     * @return the length of the log the snapshot covers; HEADER_BYTES if there is none
+     */
+    private long loadIndex() throws IOException
+    {
+        if (!Files.exists(indexFile))
+        {
+            return HEADER_BYTES;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(indexFile)).order(BYTE_ORDER);
+        if (bytes.capacity() < INDEX_HEADER_BYTES || bytes.getInt(0) != INDEX_MAGIC)
+        {
+            return HEADER_BYTES;
+        }
+        int entryCount = bytes.getInt(4);
+        long covered = bytes.getLong(8);
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.array(), INDEX_HEADER_BYTES, bytes.capacity() - INDEX_HEADER_BYTES);
+        if (entryCount < 0
+            || bytes.capacity() != INDEX_HEADER_BYTES + (long) entryCount * INDEX_ENTRY_BYTES
+            || covered != HEADER_BYTES + (long) entryCount * RECORD_BYTES
+            || covered > log.size()
+            || bytes.getLong(16) != checksum.getValue())
+        {
+            return HEADER_BYTES; // left over from another log, or damaged: rebuild from the log
+        }
+        for (int i = 0; i < entryCount; i++)
+        {
+            int offset = INDEX_HEADER_BYTES + i * INDEX_ENTRY_BYTES;
+            insert(bytes.getLong(offset), bytes.getInt(offset + 8));
+            recordCount++;
+        }
+        return covered;
+    }
+
+    /**
+     * Reads the records of the log after the part the index covers, and cuts off a last record
+     * left unfinished by a crash.
+     */
+    private void replayLog(long from) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_BYTES * 4096).order(BYTE_ORDER);
+        CRC32 checksum = new CRC32();
+        long position = from;
+        long end = log.size();
+        while (position + RECORD_BYTES <= end)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (end - position) / RECORD_BYTES * RECORD_BYTES));
+            readFully(log, buffer, position);
+            buffer.flip();
+            while (buffer.remaining() >= RECORD_BYTES)
+            {
+                int start = buffer.position();
+                checksum.reset();
+                checksum.update(buffer.array(), start, RECORD_BYTES - 4);
+                if (buffer.getInt(start + RECORD_BYTES - 4) != (int) checksum.getValue())
+                {
+                    log.truncate(position); // torn by a crash, so nothing after it can be trusted
+                    return;
+                }
+                long hash = buffer.getLong(start);
+                if (records[findSlot(hash)] == 0)
+                {
+                    insert(hash, recordCount);
+                }
+                recordCount++;
+                buffer.position(start + RECORD_BYTES);
+                position += RECORD_BYTES;
+            }
+        }
+        if (position < end)
+        {
+            log.truncate(position); // a record cut short
+        }
+    }
+
+    private void writeIndex() throws IOException
+    {
+        int entryCount = 0;
+        ByteBuffer bytes = ByteBuffer.allocate(INDEX_HEADER_BYTES + recordCount * INDEX_ENTRY_BYTES).order(BYTE_ORDER);
+        bytes.position(INDEX_HEADER_BYTES);
+        for (int i = 0; i < hashes.length; i++)
+        {
+            if (records[i] != 0)
+            {
+                bytes.putLong(hashes[i]).putInt(records[i] - 1);
+                entryCount++;
+            }
+        }
+        if (entryCount != recordCount)
+        {
+            return; // the log holds a position twice; the snapshot cannot describe it, so rebuild from the log next time
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.array(), INDEX_HEADER_BYTES, entryCount * INDEX_ENTRY_BYTES);
+        bytes.putInt(0, INDEX_MAGIC).putInt(4, entryCount).putLong(8, HEADER_BYTES + (long) recordCount * RECORD_BYTES)
+            .putLong(16, checksum.getValue());
+        bytes.position(0);
+
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (bytes.hasRemaining())
+            {
+                out.write(bytes);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the slot of the index holding a hash, or the empty slot it would go in.
+     */
+    private int findSlot(long hash)
+    {
+        int mask = hashes.length - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (records[slot] != 0 && hashes[slot] != hash)
+        {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(long hash, int recordNumber)
+    {
+        if (2 * (recordCount + 1) > hashes.length) // keep the table at most half full
+        {
+            long[] oldHashes = hashes;
+            int[] oldRecords = records;
+            hashes = new long[oldHashes.length * 2];
+            records = new int[oldRecords.length * 2];
+            for (int i = 0; i < oldHashes.length; i++)
+            {
+                if (oldRecords[i] != 0)
+                {
+                    int slot = findSlot(oldHashes[i]);
+                    hashes[slot] = oldHashes[i];
+                    records[slot] = oldRecords[i];
+                }
+            }
+        }
+        int slot = findSlot(hash);
+        hashes[slot] = hash;
+        records[slot] = recordNumber + 1;
+    }
+
+    private Cache cacheOf(long hash)
+    {
+        return cache[(int) (hash >>> 60) & (CACHE_STRIPES - 1)];
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Packs a score and a column into a non-zero long, so that 0 can mean "not found".
+     */
+    private static long pack(int score, int column)
+    {
+        return (1L << 32) | ((score & 0xFFFFL) << 8) | (column & 0xFF);
+    }
+
+    private static int columnOf(long record)
+    {
+        return (int) record & 0xFF;
+    }
+
+    /**
+     * One stripe of the in-memory cache: a least-recently-used map of hashes to packed records.
+     */
+    private static final class Cache
+    {
+        private final LinkedHashMap<Long, Long> entries;
+
+        Cache(final int capacity)
+        {
+            entries = new LinkedHashMap<Long, Long>(16, 0.75f, true)
+            {
+                protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest)
+                {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized long get(long hash)
+        {
+            Long record = entries.get(hash);
+            return (record != null) ? record : 0L;
+        }
+
+        synchronized void put(long hash, long record)
+        {
+            entries.put(hash, record);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+import java.util.Random;
+
+/**
+ * Works out the threats on a Connect4Bitboard for both players at once: the empty cells each
+ * player could complete a line with, which of them are on odd and which on even rows,
+ * and from those the columns the player to move can safely play.
+ *
+ * A threat is an empty cell that would complete a line, of the board's connect length, for its
+ * owner. A threat only matters once the cell beneath it is filled, so the cell beneath an
+ * opponent's threat is "poisoned": filling it lets the opponent win on top of it. Near the end
+ * of a game the players are forced to fill the poisoned cells one by one, and which player runs
+ * out of other moves first depends on the rows of the threats (rows counted from 1 at the
+ * bottom): Red, who moves first, is helped by threats on odd rows and Yellow by threats on even
+ * rows.
+ *
+ * analyze() reads the board once and keeps the results in fields; the getters describe the
+ * position as it was then, and neither they nor pickSafeColumn() allocate anything.
+ */
+public class ThreatAnalyzer
+{
+    private final Connect4Bitboard board;
+    private final long boardCells; // every cell of the board, without the spare bit on top of each column
+    private final long oddRows;    // every cell of rows 1, 3, 5, ... counted from 1 at the bottom
+    private final int[] safeColumns;
+
+    private long empty;
+    private long playable;
+    private long redThreats;
+    private long yellowThreats;
+    private long safeCells;
+    private int safeColumnCount;
+
+    /**
+     * Constructs an analyzer over the given bitboard.
+     *
+     * @param board the board to analyze
+     */
+    public ThreatAnalyzer(Connect4Bitboard board)
+    {
+        this.board = board;
+        WinLines lines = WinLines.forBoard(board.getColumnCount(), board.getRowCount(), board.getConnectLength());
+        this.boardCells = lines.getBoardMask();
+        this.oddRows = lines.getOddRowMask();
+        this.safeColumns = new int[board.getColumnCount()];
+    }
+
+    /**
+     * Analyzes the current position of the board.
+     *
+     * @param red true if Red is to move, false if Yellow is to move
+     */
+    public void analyze(boolean red)
+    {
+        empty = boardCells & ~board.getOccupiedMask();
+        playable = board.getPlayableMask();
+        redThreats = board.winningCells(true);
+        yellowThreats = board.winningCells(false);
+
+        long theirThreats = red ? yellowThreats : redThreats;
+        long cells = playable;
+        long mustBlock = playable & theirThreats;
+        if (mustBlock != 0)
+        {
+            cells = ((mustBlock & (mustBlock - 1)) == 0) ? mustBlock : 0; // two to block and only one token: nothing is safe
+        }
+        safeCells = cells & ~(theirThreats >>> 1);
+
+        safeColumnCount = 0;
+        for (int c = 0; c < safeColumns.length; c++)
+        {
+            if ((safeCells & board.columnMask(c)) != 0)
+            {
+                safeColumns[safeColumnCount++] = c;
+            }
+        }
+    }
+
+    /**
+     * Returns the playable cells that do not let the opponent win on their next move. Winning
+     * at once is not taken into account; check getImmediateWins() first.
+     */
+    public long getSafeCells()
+    {
+        return safeCells;
+    }
+
+    /**
+     * Returns the number of columns that can be played safely; 0 if every move loses.
+     */
+    public int getSafeColumnCount()
+    {
+        return safeColumnCount;
+    }
+
+    /**
+     * Returns one of the columns that can be played safely, in order from the left.
+     *
+     * @param index which safe column, from 0 to getSafeColumnCount() - 1
+     */
+    public int getSafeColumn(int index)
+    {
+        return safeColumns[index];
+    }
+
+    /**
+     * Returns the cells a player could fill right now to win.
+     *
+     * @param red true for Red, false for Yellow
+     */
+    public long getImmediateWins(boolean red)
+    {
+        return getThreats(red) & playable;
+    }
+
+    /**
+     * Returns every empty cell that would complete a line for a player, playable or not.
+     *
+     * @param red true for Red, false for Yellow
+     */
+    public long getThreats(boolean red)
+    {
+        return red ? redThreats : yellowThreats;
+    }
+
+    /**
+     * Returns a player's threats on odd rows (1, 3, 5, ... counted from the bottom), the
+     * threats that help Red in the endgame.
+     *
+     * @param red true for Red, false for Yellow
+     */
+    public long getOddThreats(boolean red)
+    {
+        return getThreats(red) & oddRows;
+    }
+
+    /**
+     * Returns a player's threats on even rows (2, 4, 6, ... counted from the bottom), the
+     * threats that help Yellow in the endgame.
+     *
+     * @param red true for Red, false for Yellow
+     */
+    public long getEvenThreats(boolean red)
+    {
+        return getThreats(red) & ~oddRows;
+    }
+
+    /**
+     * Returns the empty cells a player must not fill because the opponent has a threat directly
+     * above them, whether or not they are playable yet.
+     *
+     * @param red true for the cells Red must avoid, false for Yellow's
+     */
+    public long getPoisonedCells(boolean red)
+    {
+        return empty & (getThreats(!red) >>> 1);
+    }
+
+    /**
+     * Returns the empty cells that decide a zugzwang: those directly beneath a threat of either
+     * player, which whoever is forced to fill them hands to the other side.
+     */
+    public long getZugzwangCells()
+    {
+        return getPoisonedCells(true) | getPoisonedCells(false);
+    }
+
+    /**
+     * Returns a random column from the safe columns of the last analysis. If no column is safe
+     * the game is lost anyway, and a random column that is not full is returned instead.
+     *
+     * @param random the source of randomness
+     * @return the column to play
+     */
+    public int pickSafeColumn(Random random)
+    {
+        if (safeColumnCount > 0)
+        {
+            return safeColumns[random.nextInt(safeColumnCount)];
+        }
+        int playableColumns = Long.bitCount(playable);
+        int skip = random.nextInt(playableColumns);
+        long cells = playable;
+        for (int i = 0; i < skip; i++)
+        {
+            cells &= cells - 1;
+        }
+        return board.columnOf(Long.lowestOneBit(cells));
+    }
+}
@@ -0,0 +1,449 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays many games between two players without the course's GUI and reports how they did.
+ *
+ * Usage: java TournamentRunner [games] [workers] [player A] [player B] [opening plies]
+ *
+ * A player is "random" for the random baseline, or "agent:&lt;depth&gt;:&lt;millis&gt;:&lt;eval&gt;" for a
+ * MyAgent with the given search depth, time per move and evaluation weights: "none", "default",
+ * or the path of a weights file (see EvaluationWeights). "mcts:&lt;millis&gt;:&lt;iterations&gt;" is a
+ * MyAgent looking ahead with the Monte Carlo tree search instead, with the given time and
+ * playouts per move (0 playouts for no limit but the time). Parts left off use the agent's defaults.
+ * Games run concurrently, one per worker thread, each on its own Connect4Game with no frame
+ * attached. Each pair of games starts from the same random opening, a few random tokens
+ * that do not complete a line, and the players swap colors between the two; without the
+ * openings two searching agents would play the same game over and over. The runner referees every move itself: a
+ * player that does not add exactly one token, or whose move throws, loses the game. A game that
+ * fails outside a move, for instance while setting its players up, counts for neither player;
+ * the report gives the number of such games and the exception of the first to fail.
+ *
+ * The report gives each player's wins, draws and losses, an Elo difference estimated from
+ * player A's score, the games played per second, and percentiles of each player's time per
+ * move.
+ */
+public class TournamentRunner
+{
+    public static final int DEFAULT_GAMES = 200;
+    public static final int DEFAULT_OPENING_PLIES = 4;
+    public static final long TABLE_BYTES = 1024 * 1024; // many agents play at once, so each gets a small table
+
+    private static final int COLUMNS = 7;
+    private static final int ROWS = 6;
+
+    private final String playerA;
+    private final String playerB;
+    private final int openingPlies;
+
+    // results, from player A's point of view; guarded by this
+    private int winsA;
+    private int draws;
+    private int winsB;
+    private int illegalMoves;
+    private int thrownMoves;
+    private int failedGames;
+    private RuntimeException firstFailure; // of the failed games
+    private final LatencyLog latencyA = new LatencyLog();
+    private final LatencyLog latencyB = new LatencyLog();
+
+    /**
+     * Constructs a tournament between two players.
+     *
+     * @param playerA the first player's description, see createPlayer
+     * @param playerB the second player's description
+     * @param openingPlies the number of random tokens each game starts with
+     * @throws IllegalArgumentException if a description names no known player
+     */
+    public TournamentRunner(String playerA, String playerB, int openingPlies)
+    {
+        this.playerA = playerA;
+        this.playerB = playerB;
+        this.openingPlies = openingPlies;
+        shutdown(createPlayer(playerA, new Connect4Game(COLUMNS, ROWS), true, 0)); // rejects a bad description now, not in a worker
+        shutdown(createPlayer(playerB, new Connect4Game(COLUMNS, ROWS), true, 0));
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        int workers = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String playerA = (args.length > 2) ? args[2] : "agent:64:50";
+        String playerB = (args.length > 3) ? args[3] : "random";
+        int openingPlies = (args.length > 4) ? Integer.parseInt(args[4]) : DEFAULT_OPENING_PLIES;
+
+        TournamentRunner runner = new TournamentRunner(playerA, playerB, openingPlies);
+        long start = System.nanoTime();
+        runner.play(games, workers);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        runner.printReport(System.out, seconds);
+    }
+
+    /**
+     * Plays a number of games, spread over worker threads, and waits for all of them.
+     *
+     * @param games the number of games to play
+     * @param workers the number of games to play at once
+     */
+    public void play(int games, int workers) throws InterruptedException
+    {
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        for (int i = 0; i < games; i++)
+        {
+            final int gameNumber = i;
+            pool.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        playGame(gameNumber);
+                    }
+                    catch (RuntimeException e) // the pool would swallow it
+                    {
+                        recordFailure(e);
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+    }
+
+    /**
+     * Plays one game to the end and records its result.
+     *
+     * @param gameNumber the game's number; player A is Red in even games and Yellow in odd ones
+     */
+    void playGame(int gameNumber)
+    {
+        Connect4Game game = new Connect4Game(COLUMNS, ROWS);
+        Connect4Bitboard referee = new Connect4Bitboard(COLUMNS, ROWS);
+        playOpening(game, referee, new Random(gameNumber / 2));
+        boolean aIsRed = (gameNumber % 2 == 0);
+        Agent a = createPlayer(playerA, game, aIsRed, gameNumber);
+        Agent b = createPlayer(playerB, game, !aIsRed, gameNumber);
+        long[] nanosA = new long[ROWS * COLUMNS];
+        long[] nanosB = new long[ROWS * COLUMNS];
+        int movesA = 0;
+        int movesB = 0;
+
+        int result = 0; // 1 if A won, -1 if B won, 0 for a draw
+        boolean redToMove = (referee.getMoveCount() % 2 == 0);
+        boolean illegal = false;
+        boolean thrown = false;
+        try
+        {
+            while (true)
+            {
+                boolean aToMove = (redToMove == aIsRed);
+                Agent mover = aToMove ? a : b;
+                int tokensBefore = referee.getMoveCount();
+                long start = System.nanoTime();
+                try
+                {
+                    mover.move();
+                }
+                catch (RuntimeException e)
+                {
+                    thrown = true;
+                    result = aToMove ? -1 : 1;
+                    break;
+                }
+                long elapsed = System.nanoTime() - start;
+                if (aToMove)
+                {
+                    nanosA[movesA++] = elapsed;
+                }
+                else
+                {
+                    nanosB[movesB++] = elapsed;
+                }
+
+                referee.sync(game);
+                if (referee.getMoveCount() != tokensBefore + 1)
+                {
+                    illegal = true;
+                    result = aToMove ? -1 : 1;
+                    break;
+                }
+                if (referee.hasFourInARow(referee.getMask(redToMove)))
+                {
+                    result = aToMove ? 1 : -1;
+                    break;
+                }
+                if (referee.isFull())
+                {
+                    break;
+                }
+                redToMove = !redToMove;
+            }
+        }
+        finally
+        {
+            shutdown(a);
+            shutdown(b);
+        }
+
+        synchronized (this)
+        {
+            if (result > 0)
+            {
+                winsA++;
+            }
+            else if (result < 0)
+            {
+                winsB++;
+            }
+            else
+            {
+                draws++;
+            }
+            if (illegal)
+            {
+                illegalMoves++;
+            }
+            if (thrown)
+            {
+                thrownMoves++;
+            }
+            latencyA.add(nanosA, movesA);
+            latencyB.add(nanosB, movesB);
+        }
+    }
+
+    /**
+     * Records a game that failed outside any player's move and so counts for neither player.
+     */
+    private synchronized void recordFailure(RuntimeException e)
+    {
+        failedGames++;
+        if (firstFailure == null)
+        {
+            firstFailure = e;
+        }
+    }
+
+    /**
+     * Drops random tokens, alternately Red and Yellow, none of which completes a line.
+     */
+    private void playOpening(Connect4Game game, Connect4Bitboard referee, Random random)
+    {
+        for (int i = 0; i < openingPlies; i++)
+        {
+            boolean red = (i % 2 == 0);
+            long safe = referee.getPlayableMask() & ~referee.winningCells(red);
+            if (safe == 0)
+            {
+                return;
+            }
+            int column;
+            do
+            {
+                column = random.nextInt(COLUMNS);
+            }
+            while ((safe & referee.columnMask(column)) == 0);
+            dropToken(game, column, red);
+            referee.play(column, red);
+        }
+    }
+
+    /**
+     * Prints the results of the games played so far.
+     *
+     * @param out the stream to print to
+     * @param seconds the time the games took, for the games per second
+     */
+    public synchronized void printReport(PrintStream out, double seconds)
+    {
+        int played = winsA + draws + winsB;
+        double scoreA = (winsA + draws / 2.0) / Math.max(1, played);
+        out.printf("%d games in %.1f s (%.1f games/s)%n", played, seconds, played / seconds);
+        out.printf("%-20s %5d wins %5d draws %5d losses%n", playerA, winsA, draws, winsB);
+        out.printf("%-20s %5d wins %5d draws %5d losses%n", playerB, winsB, draws, winsA);
+        out.printf("Elo difference (A - B): %s%n", formatElo(scoreA));
+        if (illegalMoves > 0)
+        {
+            out.printf("%d games were lost by an illegal move%n", illegalMoves);
+        }
+        if (thrownMoves > 0)
+        {
+            out.printf("%d games were lost by a move that threw%n", thrownMoves);
+        }
+        if (failedGames > 0)
+        {
+            out.printf("%d games failed and were not counted; the first failed with:%n", failedGames);
+            firstFailure.printStackTrace(out);
+        }
+        out.println("Time per move (ms):        p50      p90      p99     p99.9      max");
+        latencyA.print(out, playerA);
+        latencyB.print(out, playerB);
+    }
+
+    /**
+     * Returns the Elo rating difference that predicts a given score.
+     *
+     * @param score the fraction of points won, counting a draw as half a point
+     */
+    static String formatElo(double score)
+    {
+        if (score <= 0)
+        {
+            return "-inf";
+        }
+        if (score >= 1)
+        {
+            return "+inf";
+        }
+        return String.format("%+.0f", -400 * Math.log10(1 / score - 1) + 0.0); // + 0.0 turns -0 into 0
+    }
+
+    /**
+     * Creates a player from its description.
+     *
+     * @param description "random", "agent[:depth[:millis[:eval]]]" or "mcts[:millis[:iterations]]"
+     * @param seed seeds the random baseline, so a tournament can be replayed
+     */
+    static Agent createPlayer(String description, Connect4Game game, boolean iAmRed, long seed)
+    {
+        String[] parts = description.split(":");
+        if (parts[0].equals("random"))
+        {
+            return new RandomPlayer(game, iAmRed, new Random(seed * 31 + (iAmRed ? 1 : 0)));
+        }
+        if (parts[0].equals("agent"))
+        {
+            MyAgent agent = new MyAgent(game, iAmRed, TABLE_BYTES);
+            if (parts.length > 1)
+            {
+                agent.setSearchDepth(Integer.parseInt(parts[1]));
+            }
+            if (parts.length > 2)
+            {
+                agent.setMoveTimeMillis(Long.parseLong(parts[2]));
+            }
+            if (parts.length > 3)
+            {
+                agent.setEvaluationWeights(parts[3].equals("none") ? null
+                    : parts[3].equals("default") ? EvaluationWeights.DEFAULT
+                    : EvaluationWeights.load(java.nio.file.Paths.get(parts[3])));
+            }
+            return agent;
+        }
+        if (parts[0].equals("mcts"))
+        {
+            MyAgent agent = new MyAgent(game, iAmRed, TABLE_BYTES);
+            agent.setMonteCarlo(true);
+            if (parts.length > 1)
+            {
+                agent.setMoveTimeMillis(Long.parseLong(parts[1]));
+            }
+            if (parts.length > 2)
+            {
+                agent.setMonteCarloIterations(Long.parseLong(parts[2]));
+            }
+            return agent;
+        }
+        throw new IllegalArgumentException("Unknown player \"" + description + "\"; expected random, agent[:depth[:millis[:eval]]] or mcts[:millis[:iterations]]");
+    }
+
+    /**
+     * Drops a token into the lowest empty slot of a column that is not full.
+     */
+    static void dropToken(Connect4Game game, int columnIndex, boolean red)
+    {
+        Connect4Column column = game.getColumn(columnIndex);
+        int slotIndex = column.getRowCount() - 1;
+        while (column.getSlot(slotIndex).getIsFilled())
+        {
+            slotIndex--;
+        }
+        if (red)
+        {
+            column.getSlot(slotIndex).addRed();
+        }
+        else
+        {
+            column.getSlot(slotIndex).addYellow();
+        }
+    }
+
+    private static void shutdown(Agent player)
+    {
+        if (player instanceof MyAgent)
+        {
+            ((MyAgent) player).shutdown();
+        }
+    }
+
+    /**
+     * The random baseline: drops its token in a random column that is not full.
+     */
+    static class RandomPlayer extends Agent
+    {
+        private final Random random;
+
+        RandomPlayer(Connect4Game game, boolean iAmRed, Random random)
+        {
+            super(game, iAmRed);
+            this.random = random;
+        }
+
+        public void move()
+        {
+            int columnIndex = random.nextInt(myGame.getColumnCount());
+            while (myGame.getColumn(columnIndex).getIsFull())
+            {
+                columnIndex = random.nextInt(myGame.getColumnCount());
+            }
+            dropToken(myGame, columnIndex, iAmRed);
+        }
+
+        public String getName()
+        {
+            return "Random";
+        }
+    }
+
+    /**
+     * Every move time recorded for one player.
+     */
+    static class LatencyLog
+    {
+        private long[] nanos = new long[1024];
+        private int count;
+
+        void add(long[] moreNanos, int moreCount)
+        {
+            if (count + moreCount > nanos.length)
+            {
+                nanos = Arrays.copyOf(nanos, Math.max(nanos.length * 2, count + moreCount));
+            }
+            System.arraycopy(moreNanos, 0, nanos, count, moreCount);
+            count += moreCount;
+        }
+
+        void print(PrintStream out, String player)
+        {
+            long[] sorted = Arrays.copyOf(nanos, count);
+            Arrays.sort(sorted);
+            out.printf("%-20s %8.3f %8.3f %8.3f %9.3f %8.3f%n", player,
+                percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), percentile(sorted, 1.0));
+        }
+
+        private static double percentile(long[] sorted, double fraction)
+        {
+            if (sorted.length == 0)
+            {
+                return 0;
+            }
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
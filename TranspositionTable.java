@@ -0,0 +1,174 @@
+/**
+ * A fixed-size table of search results, keyed by the Zobrist hash of a position.
+ *
+ * The table is one preallocated long array, so it never grows and never allocates while a
+ * search runs. It is split into buckets of two entries. The first entry of a bucket keeps the
+ * deepest result seen for the current search and is only replaced by a result at least as deep,
+ * or by anything once it is left over from an older search. The second entry is always replaced.
+ *
+ * Each entry is two longs: a packed data word holding the score, the depth it was searched to,
+ * the kind of bound the score is, the best column and the search generation that stored it; and
+ * the full hash of the position XORed with that data word.
+ *
+ * The table can be shared by several searching threads without locks. Two threads writing the
+ * same entry at once can leave a key from one write next to the data of the other, but the
+ * XORed key then no longer matches either position's hash, so the torn entry reads as a miss.
+ *
+ * The table keeps no hit or miss counts of its own. It is shared by every thread and, through
+ * AgentFactory and BatchMover, by every game, so counts kept here would mix all of their lookups
+ * and add a write to a contended counter to every probe. NegamaxSearch counts the lookups of
+ * each search instead, in getTableHits() and getTableMisses(); GeneralSearch and the helpers
+ * of ParallelSearch do not count theirs.
+ */
+public class TranspositionTable
+{
+    public static final int EXACT = 1;       // the score is the true score of the position
+    public static final int LOWER_BOUND = 2; // the true score is at least the score
+    public static final int UPPER_BOUND = 3; // the true score is at most the score
+
+    public static final int NO_MOVE = -1;
+
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int LONGS_PER_BUCKET = 2 * LONGS_PER_ENTRY;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * 8;
+
+    // layout of the data word, lowest bits first
+    private static final int SCORE_BITS = 16;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int MOVE_SHIFT = 26;
+    private static final int GENERATION_SHIFT = 34;
+
+    private final long[] entries;
+    private final int bucketMask;
+    private volatile int generation = 1; // 0 marks an empty entry; volatile, as searches on other threads read it
+
+    /**
+     * Constructs an empty table that uses at most the given amount of memory.
+     *
+     * @param budgetBytes the memory the table may use; rounded down to a power of two buckets,
+     *        and to at most 8 GB, the most one array can hold
+     */
+    public TranspositionTable(long budgetBytes)
+    {
+        long buckets = Long.highestOneBit(Math.max(1, budgetBytes / BYTES_PER_BUCKET));
+        buckets = Math.min(buckets, Integer.highestOneBit(Integer.MAX_VALUE / LONGS_PER_BUCKET)); // the most whose longs still fit in one array
+        entries = new long[(int) (buckets * LONGS_PER_BUCKET)];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Marks the start of a new search. Deep results from earlier searches stay readable but may
+     * now be replaced by shallower ones. Call this before any thread starts the new search.
+     */
+    public void newSearch()
+    {
+        generation = (generation % 255) + 1;
+    }
+
+    /**
+     * Removes every entry. No search may be using the table at the time.
+     */
+    public void clear()
+    {
+        java.util.Arrays.fill(entries, 0L);
+    }
+
+    /**
+     * Looks up a position. Lookups are not counted here; see NegamaxSearch.getTableHits().
+     *
+     * @param hash the Zobrist hash of the position
+     * @return the data word stored for the position; 0 if the position is not in the table
+     */
+    public long probe(long hash)
+    {
+        int index = bucketIndex(hash);
+        long data = entries[index + 1];
+        if (data != 0 && (entries[index] ^ data) == hash)
+        {
+            return data;
+        }
+        data = entries[index + 3];
+        if (data != 0 && (entries[index + 2] ^ data) == hash)
+        {
+            return data;
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     *
+     * @param hash the Zobrist hash of the position
+     * @param depth the depth the position was searched to
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score the score the search returned
+     * @param bestMove the best column found; NO_MOVE if there was none
+     */
+    public void store(long hash, int depth, int bound, int score, int bestMove)
+    {
+        long data = pack(depth, bound, score, bestMove);
+        int index = bucketIndex(hash);
+        long preferred = entries[index + 1];
+        if (preferred == 0
+            || (entries[index] ^ preferred) == hash
+            || generationOf(preferred) != generation
+            || depth >= depthOf(preferred))
+        {
+            entries[index] = hash ^ data;
+            entries[index + 1] = data;
+        }
+        else
+        {
+            entries[index + 2] = hash ^ data;
+            entries[index + 3] = data;
+        }
+    }
+
+    /**
+     * Returns the number of entries the table can hold.
+     */
+    public int getCapacity()
+    {
+        return entries.length / LONGS_PER_ENTRY;
+    }
+
+    public static int scoreOf(long data)
+    {
+        return (short) data; // sign-extends the low 16 bits
+    }
+
+    public static int depthOf(long data)
+    {
+        return (int) (data >>> DEPTH_SHIFT) & 0xFF;
+    }
+
+    public static int boundOf(long data)
+    {
+        return (int) (data >>> BOUND_SHIFT) & 0x3;
+    }
+
+    public static int moveOf(long data)
+    {
+        return ((int) (data >>> MOVE_SHIFT) & 0xFF) - 1;
+    }
+
+    private static int generationOf(long data)
+    {
+        return (int) (data >>> GENERATION_SHIFT) & 0xFF;
+    }
+
+    private long pack(int depth, int bound, int score, int bestMove)
+    {
+        return (score & ((1L << SCORE_BITS) - 1))
+            | ((long) Math.max(0, Math.min(depth, 0xFF)) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) (bestMove + 1) << MOVE_SHIFT)
+            | ((long) generation << GENERATION_SHIFT);
+    }
+
+    private int bucketIndex(long hash)
+    {
+        return ((int) (hash ^ (hash >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Finds the columns in which a player would complete a line on a GeneralBoard, checking many
+ * columns at once. GeneralBoard keeps a detector in step with its cells and falls back on its
+ * own column-by-column checks when there is none.
+ *
+ * The one implementation, VectorWinDetector, needs the incubating Vector API, so it is kept
+ * out of the plain build (see load()).
+ */
+public interface WinDetector
+{
+    /**
+     * Places a token. It must land on top of its column.
+     *
+     * @param column the cell's column
+     * @param row the cell's row, counted from the bottom
+     * @param red true for a Red token, false for a Yellow one
+     */
+    void set(int column, int row, boolean red);
+
+    /**
+     * Takes the top token of a column back off.
+     *
+     * @param column the cell's column
+     * @param row the cell's row, counted from the bottom
+     */
+    void clear(int column, int row);
+
+    /**
+     * Empties the board.
+     */
+    void reset();
+
+    /**
+     * Returns the leftmost column, from a given column on, in which a player completes a line
+     * by dropping a token.
+     *
+     * @param red true to check for Red, false to check for Yellow
+     * @param fromColumn the first column to check
+     * @return the winning column; -1 if there is none from fromColumn on
+     */
+    int findWinningColumn(boolean red, int fromColumn);
+
+    /**
+     * Returns a VectorWinDetector for an empty board of the given size, or null if there is
+     * none to be had: it was not compiled (it lives in vector/ and needs
+     * javac --add-modules jdk.incubator.vector), the running JVM was started without
+     * --add-modules jdk.incubator.vector, or it does not handle this board or this CPU.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     */
+    static WinDetector load(int columnCount, int rowCount, int connectLength)
+    {
+        try
+        {
+            return (WinDetector) Class.forName("VectorWinDetector")
+                .getConstructor(int.class, int.class, int.class)
+                .newInstance(columnCount, rowCount, connectLength);
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            return null; // not compiled, module missing, or refused the board; the scalar checks stand in
+        }
+    }
+}
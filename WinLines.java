@@ -0,0 +1,245 @@
+import java.util.HashMap;
+
+/**
+ * The geometry of one board size and line length, worked out once and shared: for Evaluator,
+ * the lines a player could win along that pass through each cell, the sum of the cells of each
+ * line and which cells lie on odd rows; for MyAgent's slot-by-slot checks, how far a line can
+ * reach from each column and slot. For boards that fit a Connect4Bitboard it also holds, for
+ * ThreatAnalyzer, the bitboard masks of the whole board and of its odd rows.
+ *
+ * The cells of each line are only needed while the tables are built and are not kept. Nor are
+ * bitboard masks of single cells, lines or columns: Connect4Bitboard.cellBit() and columnMask()
+ * are one shift each, which a table load would not beat.
+ *
+ * forBoard() builds the tables the first time a size is asked for and hands the same ones to
+ * every later caller, so a new agent, Evaluator or ThreatAnalyzer of a size already seen does
+ * no geometry work at all. The tables are never changed once built; the arrays returned by the
+ * package-private getters are the shared ones and must not be written to.
+ *
+ * Cells are numbered column * rowCount + row, with rows counted from the bottom as in
+ * Connect4Bitboard. Lines are numbered direction by direction (up, right, up-right,
+ * down-right), then by the column and row of their first cell.
+ */
+public final class WinLines
+{
+    // the four directions a line can run in, as column and row steps
+    private static final int[] COLUMN_STEPS = {0, 1, 1, 1};
+    private static final int[] ROW_STEPS = {1, 0, 1, -1};
+
+    private static final HashMap<String, WinLines> TABLES = new HashMap<String, WinLines>(); // guarded by WinLines.class
+
+    private final int columnCount;
+    private final int rowCount;
+    private final int connectLength;
+    private final int lineCount;
+    private final int[] lineCellSums;  // the sum of the cell numbers of each line
+    private final int[][] cellLines;   // the lines through each cell
+    private final boolean[] oddRowCells; // the cells of rows 1, 3, 5, ... counted from 1 at the bottom
+    private final int[] maxLeftDistances;  // per column: how far left a line through it can reach
+    private final int[] maxRightDistances; // per column: how far right a line through it can reach
+    private final int[] columnsToRight;    // per column
+    private final int[] slotsBelow;        // per Connect4Column slot index, counted from the top
+
+    // bitboard masks, with Connect4Bitboard's rowCount + 1 bits per column; 0 when the board does not fit
+    private final long boardMask;
+    private final long oddRowMask;
+
+    private WinLines(int columnCount, int rowCount, int connectLength)
+    {
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        this.connectLength = connectLength;
+        int cellCount = columnCount * rowCount;
+
+        int[] linesPerCell = new int[cellCount];
+        lineCount = forEachLine(null, linesPerCell);
+        int[] lineCells = new int[lineCount * connectLength]; // the cells of line i, at i * connectLength onwards
+        forEachLine(lineCells, new int[cellCount]);
+        lineCellSums = new int[lineCount];
+        cellLines = new int[cellCount][];
+        for (int i = 0; i < cellCount; i++)
+        {
+            cellLines[i] = new int[linesPerCell[i]];
+        }
+        int[] filled = new int[cellCount];
+        for (int line = 0; line < lineCount; line++)
+        {
+            for (int i = 0; i < connectLength; i++)
+            {
+                int cell = lineCells[line * connectLength + i];
+                lineCellSums[line] += cell;
+                cellLines[cell][filled[cell]++] = line;
+            }
+        }
+
+        oddRowCells = new boolean[cellCount];
+        for (int i = 0; i < cellCount; i++)
+        {
+            oddRowCells[i] = (i % rowCount) % 2 == 0;
+        }
+        maxLeftDistances = new int[columnCount];
+        maxRightDistances = new int[columnCount];
+        columnsToRight = new int[columnCount];
+        for (int c = 0; c < columnCount; c++)
+        {
+            columnsToRight[c] = columnCount - c - 1;
+            maxLeftDistances[c] = Math.min(c, connectLength - 1);
+            maxRightDistances[c] = Math.min(columnsToRight[c], connectLength - 1);
+        }
+        slotsBelow = new int[rowCount];
+        for (int slotIndex = 0; slotIndex < rowCount; slotIndex++)
+        {
+            slotsBelow[slotIndex] = rowCount - 1 - slotIndex;
+        }
+
+        long board = 0L;
+        long oddRows = 0L;
+        if (Connect4Bitboard.fits(columnCount, rowCount))
+        {
+            for (int i = 0; i < cellCount; i++)
+            {
+                long cell = 1L << (i / rowCount * (rowCount + 1) + i % rowCount);
+                board |= cell;
+                oddRows |= oddRowCells[i] ? cell : 0L;
+            }
+        }
+        boardMask = board;
+        oddRowMask = oddRows;
+    }
+
+    /**
+     * Returns the tables of a board size and line length, building them the first time they
+     * are asked for and sharing them with every later caller.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @return the tables
+     */
+    public static synchronized WinLines forBoard(int columnCount, int rowCount, int connectLength)
+    {
+        String key = columnCount + "x" + rowCount + "x" + connectLength;
+        WinLines lines = TABLES.get(key);
+        if (lines == null)
+        {
+            lines = new WinLines(columnCount, rowCount, connectLength);
+            TABLES.put(key, lines);
+        }
+        return lines;
+    }
+
+    /**
+     * Visits every line of the board, counting the lines through each cell into linesPerCell
+     * and, if cells is given, listing each line's cells in it.
+     *
+     * @return the number of lines
+     */
+    private int forEachLine(int[] cells, int[] linesPerCell)
+    {
+        int line = 0;
+        for (int d = 0; d < COLUMN_STEPS.length; d++)
+        {
+            for (int c = 0; c < columnCount; c++)
+            {
+                for (int row = 0; row < rowCount; row++)
+                {
+                    int lastColumn = c + COLUMN_STEPS[d] * (connectLength - 1);
+                    int lastRow = row + ROW_STEPS[d] * (connectLength - 1);
+                    if (lastColumn >= columnCount || lastRow < 0 || lastRow >= rowCount)
+                    {
+                        continue;
+                    }
+                    for (int i = 0; i < connectLength; i++)
+                    {
+                        int cell = (c + COLUMN_STEPS[d] * i) * rowCount + row + ROW_STEPS[d] * i;
+                        if (cells != null)
+                        {
+                            cells[line * connectLength + i] = cell;
+                        }
+                        linesPerCell[cell]++;
+                    }
+                    line++;
+                }
+            }
+        }
+        return line;
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+    public int getRowCount()
+    {
+        return rowCount;
+    }
+
+    public int getConnectLength()
+    {
+        return connectLength;
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    /**
+     * Returns the bitboard mask of every cell of the board, without the spare bit on top of
+     * each column; 0 if the board does not fit a bitboard.
+     */
+    public long getBoardMask()
+    {
+        return boardMask;
+    }
+
+    /**
+     * Returns the bitboard mask of every cell of rows 1, 3, 5, ... counted from 1 at the
+     * bottom; 0 if the board does not fit a bitboard.
+     */
+    public long getOddRowMask()
+    {
+        return oddRowMask;
+    }
+
+    public int getMaxLeftDistance(int columnIndex)
+    {
+        return maxLeftDistances[columnIndex];
+    }
+
+    public int getMaxRightDistance(int columnIndex)
+    {
+        return maxRightDistances[columnIndex];
+    }
+
+    public int getColumnsToRight(int columnIndex)
+    {
+        return columnsToRight[columnIndex];
+    }
+
+    /**
+     * Returns the number of slots below a slot of a Connect4Column, whose slot 0 is the top.
+     */
+    public int getSlotsBelow(int slotIndex)
+    {
+        return slotsBelow[slotIndex];
+    }
+
+    // the shared tables themselves, for the hot loops of Evaluator; never to be written to
+
+    int[][] cellLines()
+    {
+        return cellLines;
+    }
+
+    int[] lineCellSums()
+    {
+        return lineCellSums;
+    }
+
+    boolean[] oddRowCells()
+    {
+        return oddRowCells;
+    }
+}
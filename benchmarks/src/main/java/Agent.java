@@ -0,0 +1,19 @@
+/**
+ * Stand-in for the course's Agent class, so that MyAgent can be built and benchmarked without
+ * the course's game engine. Only the members MyAgent uses are provided.
+ */
+public abstract class Agent
+{
+    protected Connect4Game myGame;
+    protected boolean iAmRed;
+
+    public Agent(Connect4Game game, boolean iAmRed)
+    {
+        this.myGame = game;
+        this.iAmRed = iAmRed;
+    }
+
+    public abstract void move();
+
+    public abstract String getName();
+}
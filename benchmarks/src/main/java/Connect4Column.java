@@ -0,0 +1,39 @@
+/**
+ * Stand-in for the course's Connect4Column class. Slot 0 is the top of the column.
+ */
+public class Connect4Column
+{
+    private final Connect4Slot[] slots;
+
+    public Connect4Column(int rowCount)
+    {
+        slots = new Connect4Slot[rowCount];
+        for (int i = 0; i < rowCount; i++)
+        {
+            slots[i] = new Connect4Slot();
+        }
+    }
+
+    public int getRowCount()
+    {
+        return slots.length;
+    }
+
+    public Connect4Slot getSlot(int i)
+    {
+        return slots[i];
+    }
+
+    public boolean getIsFull()
+    {
+        return slots[0].getIsFilled();
+    }
+
+    public void clear()
+    {
+        for (int i = 0; i < slots.length; i++)
+        {
+            slots[i].clear();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/**
+ * Stand-in for the course's Connect4Game class: a grid of columns and nothing else.
+ */
+public class Connect4Game
+{
+    private final Connect4Column[] columns;
+
+    public Connect4Game(int columnCount, int rowCount)
+    {
+        columns = new Connect4Column[columnCount];
+        for (int i = 0; i < columnCount; i++)
+        {
+            columns[i] = new Connect4Column(rowCount);
+        }
+    }
+
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    public int getRowCount()
+    {
+        return columns[0].getRowCount();
+    }
+
+    public Connect4Column getColumn(int i)
+    {
+        return columns[i];
+    }
+
+    public void clearBoard()
+    {
+        for (int i = 0; i < columns.length; i++)
+        {
+            columns[i].clear();
+        }
+    }
+}
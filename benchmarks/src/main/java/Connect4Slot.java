@@ -0,0 +1,36 @@
+/**
+ * Stand-in for the course's Connect4Slot class.
+ */
+public class Connect4Slot
+{
+    private boolean isFilled;
+    private boolean isRed;
+
+    public boolean getIsFilled()
+    {
+        return isFilled;
+    }
+
+    public boolean getIsRed()
+    {
+        return isRed;
+    }
+
+    public void addRed()
+    {
+        isFilled = true;
+        isRed = true;
+    }
+
+    public void addYellow()
+    {
+        isFilled = true;
+        isRed = false;
+    }
+
+    public void clear()
+    {
+        isFilled = false;
+        isRed = false;
+    }
+}
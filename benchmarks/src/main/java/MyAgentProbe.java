@@ -0,0 +1,149 @@
+import java.util.Random;
+
+/**
+ * Gives the benchmarks in connect4.bench access to a MyAgent playing a stand-in
+ * Connect4Game. See connect4.bench.AgentProbe.
+ */
+public class MyAgentProbe implements connect4.bench.AgentProbe
+{
+    static final int COLUMNS = 7;
+    static final int ROWS = 6;
+    static final long TABLE_BYTES = 1024 * 1024;
+
+    private final int searchDepth;
+    private final long moveTimeMillis;
+    private final Connect4Game game = new Connect4Game(COLUMNS, ROWS);
+    private int[] moves = new int[0];
+    private MyAgent agent;
+
+    public MyAgentProbe(int searchDepth, long moveTimeMillis)
+    {
+        this.searchDepth = searchDepth;
+        this.moveTimeMillis = moveTimeMillis;
+    }
+
+    public void load(long seed, int plies)
+    {
+        moves = randomMoves(seed, plies);
+        agent = new MyAgent(game, plies % 2 == 0, TABLE_BYTES);
+        agent.setSearchDepth(searchDepth);
+        agent.setMoveTimeMillis(moveTimeMillis);
+        reset();
+    }
+
+    public void reset()
+    {
+        replay(game, moves);
+        agent.table.clear();
+        agent.search.clearHistory();
+        agent.syncBoard();
+    }
+
+    /**
+     * Returns random columns to play from an empty board, Red first, none of which completes
+     * four in a row.
+     *
+     * @param seed picks the moves; the same seed always gives the same moves
+     * @param plies the number of moves
+     */
+    static int[] randomMoves(long seed, int plies)
+    {
+        Random random = new Random(seed);
+        Connect4Bitboard board = new Connect4Bitboard(COLUMNS, ROWS);
+        int[] moves = new int[plies];
+        int played = 0;
+        boolean red = true;
+        while (played < plies)
+        {
+            if ((board.getPlayableMask() & ~board.playableWinningCells(red)) == 0)
+            {
+                // every move left would end the game, so start again from an empty board
+                board = new Connect4Bitboard(COLUMNS, ROWS);
+                played = 0;
+                red = true;
+                continue;
+            }
+            int column = random.nextInt(COLUMNS);
+            if (!board.canPlay(column))
+            {
+                continue;
+            }
+            board.play(column, red);
+            if (board.hasFourInARow(board.getMask(red)))
+            {
+                board.undo(column); // keep the game open
+                continue;
+            }
+            moves[played++] = column;
+            red = !red;
+        }
+        return moves;
+    }
+
+    /**
+     * Clears a game and plays moves into it, Red first.
+     */
+    static void replay(Connect4Game game, int[] moves)
+    {
+        game.clearBoard();
+        boolean red = true;
+        for (int i = 0; i < moves.length; i++)
+        {
+            Connect4Column column = game.getColumn(moves[i]);
+            int slotIndex = column.getRowCount() - 1;
+            while (column.getSlot(slotIndex).getIsFilled())
+            {
+                slotIndex--;
+            }
+            if (red)
+            {
+                column.getSlot(slotIndex).addRed();
+            }
+            else
+            {
+                column.getSlot(slotIndex).addYellow();
+            }
+            red = !red;
+        }
+    }
+
+    public int findHorizontalWinColumn()
+    {
+        return agent.findHorizontalWinColumn("notMyColor");
+    }
+
+    public int findDiagonalWinColumn()
+    {
+        return agent.findDiagonalWinColumn("notMyColor");
+    }
+
+    public int theyCanWin()
+    {
+        return agent.theyCanWin();
+    }
+
+    public void setSearchThreads(int threadCount)
+    {
+        agent.setSearchThreads(threadCount);
+    }
+
+    public void setMoveOrdering(int moveOrdering)
+    {
+        agent.setMoveOrdering(moveOrdering);
+    }
+
+    public void shutdown()
+    {
+        agent.shutdown();
+    }
+
+    public void move()
+    {
+        agent.move();
+    }
+
+    public long getSearchNodes()
+    {
+        return agent.getLastSearchNodes();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Gives the benchmarks in connect4.bench access to a BatchMover and to one MyAgent per game,
+ * over the same stand-in games. See connect4.bench.BatchProbe.
+ */
+public class MyBatchProbe implements connect4.bench.BatchProbe
+{
+    private final int searchDepth;
+    private final long moveTimeMillis;
+    private final BatchMover batchMover;
+    private Connect4Game[] games = new Connect4Game[0];
+    private int[][] moves = new int[0][];
+    private boolean[] redToMove = new boolean[0];
+    private int[] columns = new int[0];
+    private MyAgent[] agents = new MyAgent[0];
+
+    public MyBatchProbe(int searchDepth, long moveTimeMillis, int threadCount)
+    {
+        this.searchDepth = searchDepth;
+        this.moveTimeMillis = moveTimeMillis;
+        batchMover = new BatchMover(MyAgentProbe.COLUMNS, MyAgentProbe.ROWS, MyAgentProbe.TABLE_BYTES, threadCount);
+        batchMover.setSearchDepth(searchDepth);
+        batchMover.setMoveTimeMillis(moveTimeMillis);
+    }
+
+    public void load(long firstSeed, int gameCount, int plies)
+    {
+        games = new Connect4Game[gameCount];
+        moves = new int[gameCount][];
+        redToMove = new boolean[gameCount];
+        columns = new int[gameCount];
+        agents = new MyAgent[gameCount];
+        for (int i = 0; i < gameCount; i++)
+        {
+            games[i] = new Connect4Game(MyAgentProbe.COLUMNS, MyAgentProbe.ROWS);
+            moves[i] = MyAgentProbe.randomMoves(firstSeed + i, plies);
+            redToMove[i] = (plies % 2 == 0);
+            agents[i] = new MyAgent(games[i], redToMove[i], MyAgentProbe.TABLE_BYTES);
+            agents[i].setSearchDepth(searchDepth);
+            agents[i].setMoveTimeMillis(moveTimeMillis);
+        }
+        reset();
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < games.length; i++)
+        {
+            MyAgentProbe.replay(games[i], moves[i]);
+            agents[i].table.clear();
+            agents[i].syncBoard();
+        }
+        batchMover.clearTable();
+    }
+
+    public void moveAll()
+    {
+        batchMover.moveAll(games, redToMove, columns);
+    }
+
+    public void moveEach()
+    {
+        for (int i = 0; i < agents.length; i++)
+        {
+            agents[i].move();
+        }
+    }
+
+    public void shutdown()
+    {
+        batchMover.shutdown();
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.Random;
+
+/**
+ * Gives the benchmarks in connect4.bench access to a GeneralBoard. See
+ * connect4.bench.BoardProbe.
+ */
+public class MyBoardProbe implements connect4.bench.BoardProbe
+{
+    private final GeneralBoard board;
+
+    public MyBoardProbe(int columnCount, int rowCount, int connectLength, boolean vector)
+    {
+        board = new GeneralBoard(columnCount, rowCount, connectLength);
+        if (board.setVectorDetection(vector) != vector)
+        {
+            throw new IllegalStateException("No VectorWinDetector: it needs --add-modules jdk.incubator.vector");
+        }
+    }
+
+    public void load(long seed, int plies)
+    {
+        Random random = new Random(seed);
+        for (int ply = 0; ply < plies && !board.isFull(); ply++)
+        {
+            board.play(board.pickSafeColumn(ply % 2 == 0, random), ply % 2 == 0);
+        }
+    }
+
+    public int findWinningColumns()
+    {
+        return board.findWinningColumn(true) + board.findWinningColumn(false);
+    }
+}
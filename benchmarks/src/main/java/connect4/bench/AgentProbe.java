@@ -0,0 +1,81 @@
+package connect4.bench;
+
+/**
+ * The benchmarks' handle on one MyAgent and the game it plays.
+ *
+ * MyAgent and the course classes live in the unnamed package, which JMH benchmarks cannot
+ * import, so the benchmarks reach the agent through this interface instead. MyAgentProbe, in
+ * the unnamed package, implements it.
+ */
+public interface AgentProbe
+{
+    /**
+     * Sets the game up by playing random moves from an empty board. No move completes four in
+     * a row, so the game is still open afterwards.
+     *
+     * @param seed picks the moves; the same seed always gives the same position
+     * @param plies the number of tokens to place
+     */
+    void load(long seed, int plies);
+
+    /**
+     * Puts the game and the agent back to the position set up by load(), undoing any move()
+     * and clearing the agent's search tables and move ordering history.
+     */
+    void reset();
+
+    int findHorizontalWinColumn();
+
+    int findDiagonalWinColumn();
+
+    int theyCanWin();
+
+    /**
+     * Sets how many threads the agent searches with.
+     *
+     * @param threadCount the number of searching threads, including the calling thread
+     */
+    void setSearchThreads(int threadCount);
+
+    /**
+     * Sets the move ordering heuristics the agent searches with.
+     *
+     * @param moveOrdering a combination of the NegamaxSearch move ordering flags
+     */
+    void setMoveOrdering(int moveOrdering);
+
+    /**
+     * Stops any threads the agent started.
+     */
+    void shutdown();
+
+    /**
+     * Runs a full MyAgent.move(), which places one token in the game.
+     */
+    void move();
+
+    /**
+     * Returns the number of positions the agent's last move() searched.
+     */
+    long getSearchNodes();
+
+    /**
+     * Creates a probe around a new MyAgent.
+     *
+     * @param searchDepth the agent's search depth
+     * @param moveTimeMillis the agent's time budget per move
+     */
+    static AgentProbe create(int searchDepth, long moveTimeMillis)
+    {
+        try
+        {
+            return (AgentProbe) Class.forName("MyAgentProbe")
+                .getConstructor(int.class, long.class)
+                .newInstance(searchDepth, moveTimeMillis);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("MyAgentProbe is missing from the benchmark build", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package connect4.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counts the bytes the calling thread allocates inside move(), over every position of the
+ * corpus, after the agent has warmed up. Exits with status 1 if any steady-state move
+ * allocated, so it can guard the allocation-free move() path in a build.
+ *
+ * Usage: java -cp target/benchmarks.jar connect4.bench.AllocationCheck [searchDepth] [threads]
+ */
+public final class AllocationCheck
+{
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private AllocationCheck()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int searchDepth = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        boolean allocated = false;
+        for (PositionCorpus.Phase phase : PositionCorpus.Phase.values())
+        {
+            AgentProbe[] probes = PositionCorpus.load(phase, searchDepth, 60000);
+            for (AgentProbe probe : probes)
+            {
+                probe.setSearchThreads(threads);
+            }
+
+            long bytes = 0;
+            long moves = 0;
+            for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++)
+            {
+                for (AgentProbe probe : probes)
+                {
+                    probe.reset();
+                    long before = threadBean.getThreadAllocatedBytes(threadId);
+                    probe.move();
+                    long after = threadBean.getThreadAllocatedBytes(threadId);
+                    if (round >= WARMUP_ROUNDS)
+                    {
+                        bytes += after - before;
+                        moves++;
+                    }
+                }
+            }
+            for (AgentProbe probe : probes)
+            {
+                probe.shutdown();
+            }
+
+            System.out.printf("%-10s %8.1f bytes/move%n", phase, (double) bytes / moves);
+            allocated |= bytes > 0;
+        }
+        System.exit(allocated ? 1 : 0);
+    }
+}
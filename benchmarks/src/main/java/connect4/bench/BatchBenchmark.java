@@ -0,0 +1,81 @@
+package connect4.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves per second over many shallow games at once: "moveAll" hands them all to one
+ * BatchMover, "moveEach" calls move() on a separate MyAgent per game, as a server looping over
+ * its games would. Every table is cleared before each round of moves.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark
+{
+    public static final int GAMES = 64;
+
+    @State(Scope.Thread)
+    public static class Games
+    {
+        @Param({"OPENING", "MIDGAME"})
+        public PositionCorpus.Phase phase;
+
+        @Param({"4"})
+        public int searchDepth;
+
+        @Param({"1", "2"})
+        public int threads;
+
+        BatchProbe probe;
+
+        @Setup(Level.Trial)
+        public void load()
+        {
+            probe = BatchProbe.create(searchDepth, 60000, threads);
+            probe.load(1000L * phase.ordinal(), GAMES, phase.getPlies());
+        }
+
+        @Setup(Level.Invocation)
+        public void reset()
+        {
+            probe.reset();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown()
+        {
+            probe.shutdown();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public void moveAll(Games games)
+    {
+        games.probe.moveAll();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public void moveEach(Games games)
+    {
+        games.probe.moveEach();
+    }
+}
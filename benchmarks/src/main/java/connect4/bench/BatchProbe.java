@@ -0,0 +1,58 @@
+package connect4.bench;
+
+/**
+ * The benchmarks' handle on many games at once, moved in either by one BatchMover or by one
+ * MyAgent per game. See AgentProbe for why the benchmarks need a probe.
+ */
+public interface BatchProbe
+{
+    /**
+     * Sets up one game per seed, each from random moves as in AgentProbe.load().
+     *
+     * @param firstSeed the seed of the first game; the others follow it
+     * @param games the number of games
+     * @param plies the number of tokens to place in each game
+     */
+    void load(long firstSeed, int games, int plies);
+
+    /**
+     * Puts every game back to the position set up by load() and clears every search table.
+     */
+    void reset();
+
+    /**
+     * Moves once in every game with a single BatchMover.moveAll().
+     */
+    void moveAll();
+
+    /**
+     * Moves once in every game by calling move() on each game's own MyAgent in turn.
+     */
+    void moveEach();
+
+    /**
+     * Stops any threads the probe started.
+     */
+    void shutdown();
+
+    /**
+     * Creates a probe whose agents and batch mover share one set of settings.
+     *
+     * @param searchDepth the search depth
+     * @param moveTimeMillis the time budget per move
+     * @param threadCount the batch mover's thread count
+     */
+    static BatchProbe create(int searchDepth, long moveTimeMillis, int threadCount)
+    {
+        try
+        {
+            return (BatchProbe) Class.forName("MyBatchProbe")
+                .getConstructor(int.class, long.class, int.class)
+                .newInstance(searchDepth, moveTimeMillis, threadCount);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("MyBatchProbe is missing from the benchmark build", e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package connect4.bench;
+
+/**
+ * The benchmarks' handle on one GeneralBoard, the board MyAgent plays on when the game is too
+ * large for a bitboard. See AgentProbe for why the benchmarks need a probe.
+ */
+public interface BoardProbe
+{
+    /**
+     * Sets a position up by playing random moves, none of which hands the opponent a win on
+     * top of it, from an empty board.
+     *
+     * @param seed picks the moves; the same seed always gives the same position
+     * @param plies the number of tokens to place
+     */
+    void load(long seed, int plies);
+
+    /**
+     * Looks for a winning column for each player, as GeneralSearch does at every node.
+     *
+     * @return the sum of the two columns found, -1 for none
+     */
+    int findWinningColumns();
+
+    /**
+     * Creates a probe around a new GeneralBoard.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @param vector true to find winning columns with the VectorWinDetector, false column by column
+     * @throws IllegalStateException if vector is true and no VectorWinDetector can be loaded
+     */
+    static BoardProbe create(int columnCount, int rowCount, int connectLength, boolean vector)
+    {
+        try
+        {
+            return (BoardProbe) Class.forName("MyBoardProbe")
+                .getConstructor(int.class, int.class, int.class, boolean.class)
+                .newInstance(columnCount, rowCount, connectLength, vector);
+        }
+        catch (java.lang.reflect.InvocationTargetException e)
+        {
+            throw (RuntimeException) e.getCause();
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("MyBoardProbe is missing from the benchmark build", e);
+        }
+    }
+}
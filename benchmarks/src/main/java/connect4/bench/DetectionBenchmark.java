@@ -0,0 +1,66 @@
+package connect4.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the agent's win and block checks. None of them change the game, so every call
+ * simply moves on to the next position of the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DetectionBenchmark
+{
+    @Param({"OPENING", "MIDGAME", "NEAR_FULL"})
+    public PositionCorpus.Phase phase;
+
+    private AgentProbe[] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadCorpus()
+    {
+        probes = PositionCorpus.load(phase, 0, 0);
+    }
+
+    private AgentProbe nextProbe()
+    {
+        AgentProbe probe = probes[next];
+        next = (next + 1) % probes.length;
+        return probe;
+    }
+
+    @Benchmark
+    public int findHorizontalWinColumn()
+    {
+        return nextProbe().findHorizontalWinColumn();
+    }
+
+    @Benchmark
+    public int findDiagonalWinColumn()
+    {
+        return nextProbe().findDiagonalWinColumn();
+    }
+
+    @Benchmark
+    public int theyCanWin()
+    {
+        return nextProbe().theyCanWin();
+    }
+}
@@ -0,0 +1,97 @@
+package connect4.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of a full move(). The search depth is fixed and the time budget generous, so every run
+ * does the same work. The agent's tables are cleared before each move so no move is answered
+ * from an earlier one.
+ *
+ * "move" samples the latency of each call, so the report includes percentiles. "searchRate"
+ * runs the same moves for throughput and reports its "nodes" counter as nodes per second. Run
+ * with "-prof gc" to see the allocation rate.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MoveBenchmark
+{
+    @State(Scope.Thread)
+    public static class Positions
+    {
+        @Param({"OPENING", "MIDGAME", "NEAR_FULL"})
+        public PositionCorpus.Phase phase;
+
+        @Param({"6", "10"})
+        public int searchDepth;
+
+        @Param({"4"}) // NegamaxSearch.THREAT_ORDERING, the default; pass -p moveOrdering=0,1,2,4,7 to compare the heuristics
+        public int moveOrdering;
+
+        AgentProbe[] probes;
+        AgentProbe current;
+        int next;
+
+        @Setup(Level.Trial)
+        public void loadCorpus()
+        {
+            probes = PositionCorpus.load(phase, searchDepth, 60000);
+            for (AgentProbe probe : probes)
+            {
+                probe.setMoveOrdering(moveOrdering);
+            }
+        }
+
+        @Setup(Level.Invocation)
+        public void nextPosition()
+        {
+            current = probes[next];
+            next = (next + 1) % probes.length;
+            current.reset();
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class SearchCounters
+    {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void clear()
+        {
+            nodes = 0;
+        }
+    }
+
+    @Benchmark
+    public void move(Positions positions)
+    {
+        positions.current.move();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void searchRate(Positions positions, SearchCounters counters)
+    {
+        positions.current.move();
+        counters.nodes += positions.current.getSearchNodes();
+    }
+}
@@ -0,0 +1,53 @@
+package connect4.bench;
+
+/**
+ * Counts the positions a fixed-depth move() searches over the corpus with each move ordering
+ * heuristic on its own, with none, and with all of them, so the cut each one makes can be read
+ * off directly. Node counts at a fixed depth do not depend on the machine, so one run is enough.
+ *
+ * Usage: java -cp target/benchmarks.jar connect4.bench.MoveOrderingReport [searchDepth]
+ */
+public final class MoveOrderingReport
+{
+    // the NegamaxSearch flags, which the benchmarks cannot import from the unnamed package
+    private static final int[] ORDERINGS = {0, 1, 2, 4, 7};
+    private static final String[] NAMES = {"center only", "killers", "history", "threats", "all"};
+
+    private MoveOrderingReport()
+    {
+    }
+
+    public static void main(String[] args)
+    {
+        int searchDepth = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        System.out.printf("%-10s", "nodes/move");
+        for (String name : NAMES)
+        {
+            System.out.printf(" %12s", name);
+        }
+        System.out.println();
+
+        for (PositionCorpus.Phase phase : PositionCorpus.Phase.values())
+        {
+            AgentProbe[] probes = PositionCorpus.load(phase, searchDepth, 600000);
+            System.out.printf("%-10s", phase);
+            for (int ordering : ORDERINGS)
+            {
+                long nodes = 0;
+                for (AgentProbe probe : probes)
+                {
+                    probe.setMoveOrdering(ordering);
+                    probe.reset();
+                    probe.move();
+                    nodes += probe.getSearchNodes();
+                }
+                System.out.printf(" %12d", nodes / probes.length);
+            }
+            System.out.println();
+            for (AgentProbe probe : probes)
+            {
+                probe.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package connect4.bench;
+
+/**
+ * The seeded board positions every benchmark runs on.
+ */
+public final class PositionCorpus
+{
+    public static final int POSITIONS_PER_PHASE = 16;
+
+    /**
+     * How far into the game a position is.
+     */
+    public enum Phase
+    {
+        OPENING(6),
+        MIDGAME(18),
+        NEAR_FULL(34);
+
+        private final int plies;
+
+        Phase(int plies)
+        {
+            this.plies = plies;
+        }
+
+        public int getPlies()
+        {
+            return plies;
+        }
+    }
+
+    private PositionCorpus()
+    {
+    }
+
+    /**
+     * Returns one probe per position of a phase, each already set up on its position.
+     *
+     * @param phase the phase to load
+     * @param searchDepth the agents' search depth
+     * @param moveTimeMillis the agents' time budget per move
+     */
+    public static AgentProbe[] load(Phase phase, int searchDepth, long moveTimeMillis)
+    {
+        AgentProbe[] probes = new AgentProbe[POSITIONS_PER_PHASE];
+        for (int i = 0; i < probes.length; i++)
+        {
+            probes[i] = AgentProbe.create(searchDepth, moveTimeMillis);
+            probes[i].load(1000L * phase.ordinal() + i, phase.getPlies());
+        }
+        return probes;
+    }
+}
@@ -0,0 +1,71 @@
+package connect4.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * GeneralBoard's winning-column checks, column by column and with the VectorWinDetector, on
+ * seeded random positions of boards too large for a bitboard. Each call does what
+ * GeneralSearch does at every node: look for a win for the player to move and for the
+ * opponent.
+ *
+ * The forks add the Vector API module. To compare with a CPU without AVX, run with
+ * -jvmArgsAppend "--add-modules jdk.incubator.vector -XX:UseAVX=0" (the option replaces the
+ * module given here), which leaves the 128-bit SSE vectors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class WinDetectionBenchmark
+{
+    private static final int POSITIONS = 64;
+
+    @Param({"8x7x4", "12x10x4", "20x16x4"})
+    public String board;
+
+    @Param({"false", "true"})
+    public boolean vector;
+
+    private BoardProbe[] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void loadPositions()
+    {
+        String[] size = board.split("x");
+        int columnCount = Integer.parseInt(size[0]);
+        int rowCount = Integer.parseInt(size[1]);
+        int connectLength = Integer.parseInt(size[2]);
+        Random random = new Random(columnCount * 1000L + rowCount);
+        probes = new BoardProbe[POSITIONS];
+        for (int i = 0; i < POSITIONS; i++)
+        {
+            probes[i] = BoardProbe.create(columnCount, rowCount, connectLength, vector);
+            probes[i].load(i, random.nextInt(columnCount * rowCount * 3 / 4)); // from the opening to three quarters full
+        }
+    }
+
+    @Benchmark
+    public int findWinningColumns()
+    {
+        BoardProbe probe = probes[next];
+        next = (next + 1) % POSITIONS;
+        return probe.findWinningColumns();
+    }
+}
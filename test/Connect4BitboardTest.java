@@ -0,0 +1,103 @@
+import java.util.Random;
+
+/**
+ * Checks Connect4Bitboard's line checks on boards tall enough that shifting by three columns at
+ * once would run past the end of the long, against GeneralBoard's cell-by-cell checks.
+ *
+ * There is no test framework in this build, so this is a plain program, compiled apart from
+ * the agent like vector/:
+ *
+ *     javac -cp &lt;agent classes&gt; -d &lt;agent classes&gt; test/Connect4BitboardTest.java
+ *     java -ea -cp &lt;agent classes&gt; Connect4BitboardTest
+ *
+ * It prints "ok" and exits normally, or throws an AssertionError naming the first check that
+ * failed.
+ */
+public class Connect4BitboardTest
+{
+    private static final int GAMES_PER_BOARD = 200;
+
+    public static void main(String[] args)
+    {
+        twoTokensAreNoLineOnATallBoard();
+        fourStackedTokensAreALineOnATallBoard();
+        int[][] sizes = {{2, 30}, {3, 20}, {4, 14}, {1, 63}, {7, 6}, {8, 7}};
+        for (int i = 0; i < sizes.length; i++)
+        {
+            matchesGeneralBoard(sizes[i][0], sizes[i][1]);
+        }
+        System.out.println("ok");
+    }
+
+    private static void twoTokensAreNoLineOnATallBoard()
+    {
+        Connect4Bitboard board = new Connect4Bitboard(2, 30, 4);
+        board.play(0, true);
+        board.play(1, false);
+        board.play(1, true);
+        check(!board.hasWinningLine(board.getMask(true)), "2x30: two Red tokens make a line");
+        check(!board.hasFourInARow(board.getMask(true)), "2x30: two Red tokens make four in a row");
+        check(board.winningCells(true) == 0, "2x30: two Red tokens threaten a line");
+    }
+
+    private static void fourStackedTokensAreALineOnATallBoard()
+    {
+        Connect4Bitboard board = new Connect4Bitboard(2, 30, 4);
+        for (int i = 0; i < 3; i++)
+        {
+            board.play(0, true);
+        }
+        check(board.findWinningColumn(true) == 0, "2x30: three stacked Red tokens do not threaten column 0");
+        board.play(0, true);
+        check(board.hasWinningLine(board.getMask(true)), "2x30: four stacked Red tokens make no line");
+    }
+
+    /**
+     * Plays seeded random games on both boards, comparing each player's winning column before
+     * every move and whether each move completes a line.
+     */
+    private static void matchesGeneralBoard(int columnCount, int rowCount)
+    {
+        Random random = new Random(columnCount * 1000L + rowCount);
+        for (int game = 0; game < GAMES_PER_BOARD; game++)
+        {
+            Connect4Bitboard board = new Connect4Bitboard(columnCount, rowCount, 4);
+            GeneralBoard general = new GeneralBoard(columnCount, rowCount, 4);
+            general.setVectorDetection(false);
+            boolean red = true;
+            while (!board.isFull())
+            {
+                for (int player = 0; player < 2; player++)
+                {
+                    boolean color = (player == 0);
+                    check(board.findWinningColumn(color) == general.findWinningColumn(color),
+                        columnCount + "x" + rowCount + " game " + game + ": winning columns differ after "
+                        + board.getMoveCount() + " moves");
+                }
+                int column = random.nextInt(columnCount);
+                if (!board.canPlay(column))
+                {
+                    continue;
+                }
+                boolean wins = general.isWinningMove(column, red);
+                board.play(column, red);
+                general.play(column, red);
+                check(board.hasWinningLine(board.getMask(red)) == wins,
+                    columnCount + "x" + rowCount + " game " + game + ": line check disagrees with GeneralBoard");
+                if (wins)
+                {
+                    break;
+                }
+                red = !red;
+            }
+        }
+    }
+
+    private static void check(boolean condition, String failure)
+    {
+        if (!condition)
+        {
+            throw new AssertionError(failure);
+        }
+    }
+}
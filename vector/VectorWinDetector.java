@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A WinDetector on the incubating Vector API, for four in a row on boards of up to 64 columns.
+ *
+ * Each row of the board is kept as a long with one bit per column, for each player, and the
+ * rows of a chunk go in the lanes of one vector. The cells that would complete a line are then
+ * found for every column of every row of the chunk at once, with the shifts and ands
+ * Connect4Bitboard uses on its single long: across a row is a shift of the row itself, and
+ * along a diagonal a shift of the rows above and below, which are simply the same array loaded
+ * from one row further on or back. Anding with the cells each column plays into next leaves
+ * the winning columns.
+ *
+ * The line length is fixed at four so that every check is written out in full. Loops with
+ * vectors carried from one pass to the next are not compiled into registers on JDK 17 and
+ * allocate instead, which costs more than the vectors save; WinDetector.load() gets null for
+ * any other line length, and GeneralBoard checks column by column.
+ *
+ * This file is compiled apart from the other sources, with
+ *
+ *     javac --add-modules jdk.incubator.vector -cp &lt;agent classes&gt; -d &lt;agent classes&gt; vector/VectorWinDetector.java
+ *
+ * and is used only by a JVM started with --add-modules jdk.incubator.vector.
+ */
+public class VectorWinDetector implements WinDetector
+{
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    private static final int PADDING = 3; // empty rows kept below and above the board, so a line's rows can always be loaded
+
+    private final int columnCount;
+    private final int rowCount;
+    private final long[] redRows; // the columns holding Red tokens, by row + PADDING
+    private final long[] yellowRows;
+    private final long[] playableRows; // the columns whose next empty cell is on each row
+
+    /**
+     * Constructs a detector for an empty board.
+     *
+     * @param columnCount the number of columns of the board
+     * @param rowCount the number of rows of the board
+     * @param connectLength the number of tokens in a row that wins
+     * @throws UnsupportedOperationException if the line is not four long, the board has more
+     *         than 64 columns, or the CPU has no vectors of at least two longs
+     */
+    public VectorWinDetector(int columnCount, int rowCount, int connectLength)
+    {
+        if (connectLength != 4 || columnCount > Long.SIZE || SPECIES.length() < 2)
+        {
+            throw new UnsupportedOperationException("Only four in a row on up to 64 columns, with vectors of two longs or more");
+        }
+        this.columnCount = columnCount;
+        this.rowCount = rowCount;
+        redRows = new long[rowCount + 2 * PADDING + SPECIES.length()]; // the last chunk may reach past the top padding
+        yellowRows = new long[redRows.length];
+        playableRows = new long[rowCount + SPECIES.length()];
+        reset();
+    }
+
+    public void set(int column, int row, boolean red)
+    {
+        long bit = 1L << column;
+        (red ? redRows : yellowRows)[row + PADDING] |= bit;
+        playableRows[row] &= ~bit;
+        if (row + 1 < rowCount)
+        {
+            playableRows[row + 1] |= bit;
+        }
+    }
+
+    public void clear(int column, int row)
+    {
+        long bit = 1L << column;
+        redRows[row + PADDING] &= ~bit;
+        yellowRows[row + PADDING] &= ~bit;
+        playableRows[row] |= bit;
+        if (row + 1 < rowCount)
+        {
+            playableRows[row + 1] &= ~bit;
+        }
+    }
+
+    public void reset()
+    {
+        Arrays.fill(redRows, 0L);
+        Arrays.fill(yellowRows, 0L);
+        Arrays.fill(playableRows, 0L);
+        playableRows[0] = (columnCount == Long.SIZE) ? -1L : (1L << columnCount) - 1;
+    }
+
+    public int findWinningColumn(boolean red, int fromColumn)
+    {
+        if (fromColumn >= Long.SIZE)
+        {
+            return -1; // the shift below would wrap around to 0 and keep every column
+        }
+        long[] rows = red ? redRows : yellowRows;
+        long found = 0L;
+        for (int r = 0; r < rowCount; r += SPECIES.length())
+        {
+            int i = r + PADDING;
+            LongVector row = LongVector.fromArray(SPECIES, rows, i);
+            LongVector below1 = LongVector.fromArray(SPECIES, rows, i - 1);
+            LongVector below2 = LongVector.fromArray(SPECIES, rows, i - 2);
+            LongVector below3 = LongVector.fromArray(SPECIES, rows, i - 3);
+            LongVector above1 = LongVector.fromArray(SPECIES, rows, i + 1);
+            LongVector above2 = LongVector.fromArray(SPECIES, rows, i + 2);
+            LongVector above3 = LongVector.fromArray(SPECIES, rows, i + 3);
+
+            LongVector cells = below1.and(below2).and(below3); // three tokens below
+            cells = cells.or(line(left(row, 1), left(row, 2), left(row, 3),
+                right(row, 1), right(row, 2), right(row, 3)));
+            cells = cells.or(line(left(below1, 1), left(below2, 2), left(below3, 3), // diagonal going up to the right
+                right(above1, 1), right(above2, 2), right(above3, 3)));
+            cells = cells.or(line(left(above1, 1), left(above2, 2), left(above3, 3), // diagonal going down to the right
+                right(below1, 1), right(below2, 2), right(below3, 3)));
+            found |= cells.and(LongVector.fromArray(SPECIES, playableRows, r)).reduceLanes(VectorOperators.OR);
+        }
+        found &= -1L << fromColumn;
+        return (found == 0L) ? -1 : Long.numberOfTrailingZeros(found);
+    }
+
+    /**
+     * Returns the cells that would complete a line given, for each of the three cells on either
+     * side of them along the line, nearest first, whether it holds a token.
+     */
+    private static LongVector line(LongVector left1, LongVector left2, LongVector left3,
+        LongVector right1, LongVector right2, LongVector right3)
+    {
+        LongVector leftPair = left1.and(left2);
+        LongVector rightPair = right1.and(right2);
+        return leftPair.and(left3.or(right1)).or(rightPair.and(right3.or(left1)));
+    }
+
+    // whether the cell that many columns to the left, or to the right, of each cell holds a token
+    private static LongVector left(LongVector rows, int columns)
+    {
+        return rows.lanewise(VectorOperators.LSHL, columns);
+    }
+
+    private static LongVector right(LongVector rows, int columns)
+    {
+        return rows.lanewise(VectorOperators.LSHR, columns);
+    }
+}